@@ -0,0 +1,58 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Execution only. The script is parsed, resolved and compiled once in the setup, and every
+// invocation runs it on a fresh engine, so globals start empty each time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+  @Param({"arithmetic", "variables", "strings"})
+  public String workload;
+
+  @Param({"100", "10000", "100000"})
+  public int size;
+
+  private List<Stmt> statements;
+  private Chunk chunk;
+  private CompiledCode closures;
+  private final OutputSink output = OutputSink.of(System.out);
+
+  @Setup
+  public void setup() {
+    String source = Workloads.generate(workload, size);
+    statements = new Parser(new Scanner(source, new SymbolTable(), new ErrorReporter()).scanPacked()).parse();
+    new Resolver().resolve(statements);
+    chunk = new Compiler().compile(statements);
+    closures = ClosureCompiler.compile(statements);
+  }
+
+  @Benchmark
+  public boolean interpret() {
+    return new Interpreter().interpret(statements);
+  }
+
+  @Benchmark
+  public boolean vm() {
+    return new VM().interpret(chunk);
+  }
+
+  @Benchmark
+  public boolean nanBoxVm() {
+    return new NanBoxVM().interpret(chunk);
+  }
+
+  @Benchmark
+  public Environment closures() {
+    Environment globals = new Environment();
+    closures.run(globals, output);
+    return globals;
+  }
+}
@@ -0,0 +1,42 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Parsing only. The tokens are scanned once in the setup, the Parser does not modify them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+  @Param({"arithmetic", "variables", "strings"})
+  public String workload;
+
+  @Param({"100", "10000", "100000"})
+  public int size;
+
+  private List<Token> tokens;
+  private PackedTokens packed;
+
+  @Setup
+  public void setup() {
+    String source = Workloads.generate(workload, size);
+    SymbolTable symbols = new SymbolTable();
+    tokens = new Scanner(source, symbols, new ErrorReporter()).scanTokens();
+    packed = new Scanner(source, symbols, new ErrorReporter()).scanPacked();
+  }
+
+  @Benchmark
+  public List<Stmt> parseTokens() {
+    return new Parser(tokens).parse();
+  }
+
+  @Benchmark
+  public List<Stmt> parsePacked() {
+    return new Parser(packed).parse();
+  }
+}
@@ -0,0 +1,40 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+  @Param({"arithmetic", "variables", "strings"})
+  public String workload;
+
+  @Param({"100", "10000", "100000"})
+  public int size;
+
+  private String source;
+  // Kept across invocations, names are interned once like in a long lived LoxContext.
+  private SymbolTable symbols;
+
+  @Setup
+  public void setup() {
+    source = Workloads.generate(workload, size);
+    symbols = new SymbolTable();
+  }
+
+  @Benchmark
+  public List<Token> scanTokens() {
+    return new Scanner(source, symbols, new ErrorReporter()).scanTokens();
+  }
+
+  @Benchmark
+  public PackedTokens scanPacked() {
+    return new Scanner(source, symbols, new ErrorReporter()).scanPacked();
+  }
+}
@@ -0,0 +1,38 @@
+package lox;
+
+// Synthetic Lox scripts for the benchmarks. They have no print statements, so running
+// them measures the engine and not System.out.
+final class Workloads {
+  private Workloads() {}
+
+  static String generate(String kind, int statements) {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < statements; i++) {
+      switch (kind) {
+        case "arithmetic":
+          // Only literals, the Interpreter's number fast path.
+          source.append("(").append(i).append(" + 2.5) * 3 - 4 / (5 + ")
+                .append(i % 7).append(") < 60 * 60 * 24;\n");
+          break;
+        case "variables":
+          // Every statement reads the last few globals and defines a new one.
+          if (i < 4) {
+            source.append("var v").append(i).append(" = ").append(i).append(";\n");
+          } else {
+            source.append("var v").append(i).append(" = v").append(i - 1)
+                  .append(" + v").append(i - 2).append(" - v").append(i - 4).append(";\n");
+          }
+          break;
+        case "strings":
+          source.append("var s").append(i % 16).append(" = \"lorem \" + \"ipsum ")
+                .append(i).append("\" + \"dolor\";\n")
+                .append("s").append(i % 16).append(" == \"lorem ipsum dolor\";\n");
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown workload: " + kind);
+      }
+    }
+
+    return source.toString();
+  }
+}
@@ -23,6 +23,11 @@ public class AstPrinter implements Expression.Visitor<String> {
     return expr.value.toString();
   }
 
+  @Override
+  public String visitVariableExpression (Expression.Variable expr) {
+    return expr.name.lexeme;
+  }
+
   @Override
   public String visitUnaryExpression (Expression.Unary expr) {
     return parenthesize (expr.operator.lexeme, expr.right);
@@ -0,0 +1,372 @@
+package lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary snapshot of a parsed script, stored next to it (script.lox -> script.loxc), so the
+// next run can load the tree instead of scanning and parsing again. Like a .pyc file.
+//
+// Layout: magic "LOXC", format version, charset name, SHA-256 of the source file, then the
+// statements in prefix order. Every node starts with a tag byte. Tokens keep their type,
+// line and lexeme, so runtime errors report the same lines as after parsing. Strings
+// (lexemes and string literals) are written once, later uses refer to their index.
+// The snapshot holds the tree as the Parser gives it: unresolved and not optimized.
+final class AstSnapshot implements Expression.Visitor<Void>, Stmt.Visitor<Void> {
+  private static final int MAGIC = 0x4c4f5843; // "LOXC"
+  private static final int VERSION = 1;
+
+  private static final byte EXPR_STMT = 0;
+  private static final byte PRINT_STMT = 1;
+  private static final byte VAR_STMT = 2;
+  private static final byte BINARY = 3;
+  private static final byte GROUPING = 4;
+  private static final byte LITERAL = 5;
+  private static final byte VARIABLE = 6;
+  private static final byte UNARY = 7;
+  private static final byte NO_EXPRESSION = 8;
+
+  private static final byte NIL = 0;
+  private static final byte TRUE = 1;
+  private static final byte FALSE = 2;
+  private static final byte NUMBER = 3;
+  private static final byte STRING = 4;
+
+  // Strings index: -1 means a new string follows inline.
+  private static final int NEW_STRING = -1;
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  private final DataOutputStream out;
+  private final Map<String, Integer> written = new HashMap<>();
+
+  private AstSnapshot(DataOutputStream out) {
+    this.out = out;
+  }
+
+  static Path pathFor(Path script) {
+    return script.resolveSibling(script.getFileName() + "c");
+  }
+
+  // SHA-256 of the file bytes, read through a mapping so nothing is copied.
+  static byte[] hash(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      long size = channel.size();
+      for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+        long length = Math.min(Integer.MAX_VALUE, size - position);
+        digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+      }
+      return digest.digest();
+    } catch (NoSuchAlgorithmException error) {
+      // Every Java platform has to provide SHA-256.
+      throw new IllegalStateException(error);
+    }
+  }
+
+  // Writes to a temporary file first and moves it in place, so a reader never sees a
+  // half written snapshot. A snapshot is only a cache: failing to write it is not an error.
+  static void write(Path path, byte[] hash, Charset charset, List<Stmt> statements) {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(charset.name());
+        out.write(hash);
+        out.writeInt(statements.size());
+        AstSnapshot writer = new AstSnapshot(out);
+        for (Stmt statement : statements) {
+          writer.write(statement);
+        }
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException error) {
+      try {
+        Files.deleteIfExists(temporary);
+      } catch (IOException ignored) {
+        // Nothing else to do, the next run will write it again.
+      }
+    }
+  }
+
+  // Returns the statements, or null when there is no usable snapshot for this source:
+  // missing, from another version or charset, stale or damaged. The hash only tells the
+  // source did not change, not that the snapshot is intact, so nothing read from it is
+  // trusted: any failure while decoding means there is no snapshot.
+  static List<Stmt> read(Path path, byte[] hash, Charset charset, SymbolTable symbols) {
+    if (!Files.isRegularFile(path)) return null;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+      byte[] charsetName = new byte[Reader.length(in, in.getShort() & 0xffff)];
+      in.get(charsetName);
+      if (!new String(charsetName, StandardCharsets.UTF_8).equals(charset.name())) return null;
+      byte[] stored = new byte[hash.length];
+      in.get(stored);
+      if (!MessageDigest.isEqual(stored, hash)) return null;
+
+      return new Reader(in, symbols).statements();
+    } catch (IOException | RuntimeException | StackOverflowError error) {
+      // Overflowing the stack takes a corrupt file with an absurdly deep tree.
+      return null;
+    }
+  }
+
+  private void write(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  private void write(Expression expr) {
+    expr.accept(this);
+  }
+
+  @Override
+  public Void visitExprStmt(Stmt.Expr stmt) {
+    tag(EXPR_STMT);
+    write(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    tag(PRINT_STMT);
+    write(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    tag(VAR_STMT);
+    token(stmt.name);
+    if (stmt.initializer == null) {
+      tag(NO_EXPRESSION);
+    } else {
+      write(stmt.initializer);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpression(Expression.Binary expr) {
+    tag(BINARY);
+    token(expr.operator);
+    write(expr.left);
+    write(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpression(Expression.Grouping expr) {
+    tag(GROUPING);
+    write(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpression(Expression.Literal expr) {
+    tag(LITERAL);
+    Object value = expr.value;
+    try {
+      if (value == null) {
+        out.writeByte(NIL);
+      } else if (value instanceof Boolean) {
+        out.writeByte((Boolean) value ? TRUE : FALSE);
+      } else if (value instanceof Double) {
+        out.writeByte(NUMBER);
+        out.writeDouble((Double) value);
+      } else {
+        out.writeByte(STRING);
+        string(value.toString());
+      }
+    } catch (IOException error) {
+      throw new SnapshotError(error);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpression(Expression.Variable expr) {
+    tag(VARIABLE);
+    token(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpression(Expression.Unary expr) {
+    tag(UNARY);
+    token(expr.operator);
+    write(expr.right);
+    return null;
+  }
+
+  private void tag(byte tag) {
+    try {
+      out.writeByte(tag);
+    } catch (IOException error) {
+      throw new SnapshotError(error);
+    }
+  }
+
+  // Token.literal is not stored: tokens in the tree are operators and names, which have none.
+  private void token(Token token) {
+    try {
+      out.writeByte(token.type.ordinal());
+      out.writeInt(token.line);
+      string(token.lexeme);
+    } catch (IOException error) {
+      throw new SnapshotError(error);
+    }
+  }
+
+  private void string(String value) throws IOException {
+    Integer index = written.get(value);
+    if (index != null) {
+      out.writeInt(index);
+      return;
+    }
+
+    written.put(value, written.size());
+    out.writeInt(NEW_STRING);
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  // The visitors cannot throw IOException, it travels wrapped in this.
+  private static class SnapshotError extends RuntimeException {
+    SnapshotError(IOException cause) {
+      super(cause);
+    }
+  }
+
+  private static final class Reader {
+    private final ByteBuffer in;
+    private final SymbolTable symbols;
+    private final List<String> strings = new ArrayList<>();
+
+    Reader(ByteBuffer in, SymbolTable symbols) {
+      this.in = in;
+      this.symbols = symbols;
+    }
+
+    List<Stmt> statements() {
+      int count = length(in, in.getInt());
+      List<Stmt> statements = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        statements.add(statement());
+      }
+      if (in.hasRemaining()) throw new IllegalArgumentException("Trailing bytes in snapshot.");
+
+      return statements;
+    }
+
+    private Stmt statement() {
+      byte tag = in.get();
+      switch (tag) {
+        case EXPR_STMT: return new Stmt.Expr(operand());
+        case PRINT_STMT: return new Stmt.Print(operand());
+        case VAR_STMT: {
+          Token name = identifier();
+          return new Stmt.Var(name, expression());
+        }
+        default: throw new IllegalArgumentException("Bad statement tag " + tag + ".");
+      }
+    }
+
+    // Null for NO_EXPRESSION, a Var without initializer.
+    private Expression expression() {
+      byte tag = in.get();
+      switch (tag) {
+        case BINARY: {
+          Token operator = token();
+          Expression left = operand();
+          return new Expression.Binary(left, operator, operand());
+        }
+        case GROUPING: return new Expression.Grouping(operand());
+        case LITERAL: return new Expression.Literal(literal());
+        case VARIABLE: return new Expression.Variable(identifier());
+        case UNARY: {
+          Token operator = token();
+          return new Expression.Unary(operator, operand());
+        }
+        case NO_EXPRESSION: return null;
+        default: throw new IllegalArgumentException("Bad expression tag " + tag + ".");
+      }
+    }
+
+    // An expression that cannot be missing.
+    private Expression operand() {
+      Expression expr = expression();
+      if (expr == null) throw new IllegalArgumentException("Missing expression.");
+      return expr;
+    }
+
+    private Object literal() {
+      byte kind = in.get();
+      switch (kind) {
+        case NIL: return null;
+        case TRUE: return true;
+        case FALSE: return false;
+        case NUMBER: return in.getDouble();
+        case STRING: return string();
+        default: throw new IllegalArgumentException("Bad literal kind " + kind + ".");
+      }
+    }
+
+    private Token token() {
+      TokenType type = TYPES[in.get()];
+      int line = in.getInt();
+      String lexeme = string();
+      if (type == TokenType.IDENTIFIER) {
+        Symbol symbol = symbols.intern(lexeme);
+        return new Token(type, symbol.name, null, line, symbol);
+      }
+
+      return new Token(type, lexeme, null, line);
+    }
+
+    // Names must be identifiers, the Resolver needs their Symbol.
+    private Token identifier() {
+      Token name = token();
+      if (name.type != TokenType.IDENTIFIER) throw new IllegalArgumentException("Bad name.");
+      return name;
+    }
+
+    private String string() {
+      int index = in.getInt();
+      if (index != NEW_STRING) return strings.get(index);
+
+      byte[] bytes = new byte[length(in, in.getInt())];
+      in.get(bytes);
+      String value = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(value);
+      return value;
+    }
+
+    // Checks a length or count read from the file before anything is allocated for it: no
+    // more than the bytes left, as every item takes at least one.
+    static int length(ByteBuffer in, int length) {
+      if (length < 0 || length > in.remaining()) {
+        throw new IllegalArgumentException("Bad length " + length + ".");
+      }
+      return length;
+    }
+  }
+}
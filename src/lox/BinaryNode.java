@@ -0,0 +1,185 @@
+package lox;
+
+// Specialized behaviour of one Expression.Binary in the tree (Truffle style node rewriting).
+// Every Binary starts UNINITIALIZED. The first time it runs it looks at its operator and the
+// types of its operands, and rewrites its node field into one of the specialized nodes below,
+// which no longer switch on the operator. If the operand types change later, the node
+// deoptimizes for good into GENERIC, the plain boxed path of the Interpreter.
+// Nodes hold no state, so one instance of each is shared by all the Binary expressions.
+abstract class BinaryNode {
+  static final BinaryNode UNINITIALIZED = new Uninitialized();
+  static final BinaryNode GENERIC = new Generic();
+
+  abstract Object execute(Interpreter interpreter, Expression.Binary expr);
+
+  // Numeric nodes override this to compute without boxing. See Interpreter.evaluateNumber().
+  double executeNumber(Interpreter interpreter, Expression.Binary expr) {
+    return interpreter.unbox(execute(interpreter, expr));
+  }
+
+  // The operand types seen at this expression changed. Both operands are already evaluated.
+  static Object deoptimize(Interpreter interpreter, Expression.Binary expr,
+                           Object left, Object right) {
+    expr.node = GENERIC;
+    return interpreter.binary(expr, left, right);
+  }
+
+  private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+    switch (operator) {
+      case PLUS:
+        if (LoxString.isString(left)) return STRING_CONCAT;
+        return NUMBER_ADD;
+      case MINUS: return NUMBER_SUBTRACT;
+      case STAR: return NUMBER_MULTIPLY;
+      case SLASH: return NUMBER_DIVIDE;
+      case GREATER: return NUMBER_GREATER;
+      case GREATER_EQUAL: return NUMBER_GREATER_EQUAL;
+      case LESS: return NUMBER_LESS;
+      case LESS_EQUAL: return NUMBER_LESS_EQUAL;
+      case EQUAL_EQUAL: return EQUAL;
+      case BANG_EQUAL: return NOT_EQUAL;
+      default: return GENERIC;
+    }
+  }
+
+  private static class Uninitialized extends BinaryNode {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      // Throws on a type error, so only types that worked get a specialization.
+      Object result = interpreter.binary(expr, left, right);
+      expr.node = specialize(expr.operator.type, left, right);
+      return result;
+    }
+  }
+
+  private static class Generic extends BinaryNode {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      return interpreter.binary(expr, left, right);
+    }
+  }
+
+  // Both operands were numbers. Operands are computed unboxed.
+  private abstract static class NumberArithmetic extends BinaryNode {
+    abstract double apply(double left, double right);
+
+    @Override
+    final Object execute(Interpreter interpreter, Expression.Binary expr) {
+      double value = executeNumber(interpreter, expr);
+      return interpreter.isNumber ? (Object) value : interpreter.nonNumber;
+    }
+
+    @Override
+    final double executeNumber(Interpreter interpreter, Expression.Binary expr) {
+      double left = interpreter.evaluateNumber(expr.left);
+      if (!interpreter.isNumber) {
+        Object boxedLeft = interpreter.nonNumber;
+        return interpreter.unbox(
+            deoptimize(interpreter, expr, boxedLeft, interpreter.evaluate(expr.right)));
+      }
+
+      double right = interpreter.evaluateNumber(expr.right);
+      if (!interpreter.isNumber) {
+        return interpreter.unbox(deoptimize(interpreter, expr, left, interpreter.nonNumber));
+      }
+
+      return apply(left, right);
+    }
+  }
+
+  private abstract static class NumberComparison extends BinaryNode {
+    abstract boolean apply(double left, double right);
+
+    @Override
+    final Object execute(Interpreter interpreter, Expression.Binary expr) {
+      double left = interpreter.evaluateNumber(expr.left);
+      if (!interpreter.isNumber) {
+        Object boxedLeft = interpreter.nonNumber;
+        return deoptimize(interpreter, expr, boxedLeft, interpreter.evaluate(expr.right));
+      }
+
+      double right = interpreter.evaluateNumber(expr.right);
+      if (!interpreter.isNumber) {
+        return deoptimize(interpreter, expr, left, interpreter.nonNumber);
+      }
+
+      return apply(left, right);
+    }
+  }
+
+  private static final BinaryNode NUMBER_ADD = new NumberArithmetic() {
+    @Override
+    double apply(double left, double right) { return left + right; }
+  };
+
+  private static final BinaryNode NUMBER_SUBTRACT = new NumberArithmetic() {
+    @Override
+    double apply(double left, double right) { return left - right; }
+  };
+
+  private static final BinaryNode NUMBER_MULTIPLY = new NumberArithmetic() {
+    @Override
+    double apply(double left, double right) { return left * right; }
+  };
+
+  private static final BinaryNode NUMBER_DIVIDE = new NumberArithmetic() {
+    @Override
+    double apply(double left, double right) { return left / right; }
+  };
+
+  private static final BinaryNode NUMBER_GREATER = new NumberComparison() {
+    @Override
+    boolean apply(double left, double right) { return left > right; }
+  };
+
+  private static final BinaryNode NUMBER_GREATER_EQUAL = new NumberComparison() {
+    @Override
+    boolean apply(double left, double right) { return left >= right; }
+  };
+
+  private static final BinaryNode NUMBER_LESS = new NumberComparison() {
+    @Override
+    boolean apply(double left, double right) { return left < right; }
+  };
+
+  private static final BinaryNode NUMBER_LESS_EQUAL = new NumberComparison() {
+    @Override
+    boolean apply(double left, double right) { return left <= right; }
+  };
+
+  private static final BinaryNode STRING_CONCAT = new BinaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      if (LoxString.isString(left) && LoxString.isString(right)) {
+        return LoxString.concat(expr.operator, left, right);
+      }
+
+      return deoptimize(interpreter, expr, left, right);
+    }
+  };
+
+  // Equality works on any type, these only skip the operator switch.
+  private static final BinaryNode EQUAL = new BinaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      return Interpreter.isEqual(left, right);
+    }
+  };
+
+  private static final BinaryNode NOT_EQUAL = new BinaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Binary expr) {
+      Object left = interpreter.evaluate(expr.left);
+      Object right = interpreter.evaluate(expr.right);
+      return !Interpreter.isEqual(left, right);
+    }
+  };
+}
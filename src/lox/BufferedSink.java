@@ -0,0 +1,138 @@
+package lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Output sink for print heavy scripts. Lines are collected in a large buffer and written
+// to a channel in big blocks, without the locking and per line flushing of System.out.
+// Not thread safe, one sink belongs to one Interpreter. Whoever owns it must flush() or
+// close() it before exiting, or the buffered lines are lost.
+class BufferedSink implements OutputSink {
+  enum FlushPolicy {
+    // Write out every line, for interactive use.
+    LINE,
+    // Write out only when the buffer is full, or on flush().
+    FULL
+  }
+
+  static final int DEFAULT_CAPACITY = 64 * 1024;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final WritableByteChannel channel;
+  private final CharsetEncoder encoder;
+  private final FlushPolicy policy;
+  private final CharBuffer chars;
+  private final ByteBuffer bytes;
+  // False for standard output, which stays open after close().
+  private final boolean ownsChannel;
+
+  // The sink owns the channel, close() closes it.
+  BufferedSink(WritableByteChannel channel, Charset charset, int capacity, FlushPolicy policy) {
+    this(channel, charset, capacity, policy, true);
+  }
+
+  private BufferedSink(WritableByteChannel channel, Charset charset, int capacity,
+                       FlushPolicy policy, boolean ownsChannel) {
+    this.channel = channel;
+    this.ownsChannel = ownsChannel;
+    // Unmappable characters become '?', as with a PrintStream.
+    this.encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.policy = policy;
+    this.chars = CharBuffer.allocate(capacity);
+    this.bytes = ByteBuffer.allocate((int) Math.ceil(capacity * encoder.maxBytesPerChar()));
+  }
+
+  // Buffered standard output, in the default charset.
+  static BufferedSink stdout() {
+    FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+    return new BufferedSink(channel, Charset.defaultCharset(), DEFAULT_CAPACITY,
+        FlushPolicy.FULL, false);
+  }
+
+  // Buffered output to a file, written through its FileChannel. The file is truncated.
+  static BufferedSink file(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    return new BufferedSink(channel, Charset.defaultCharset(), DEFAULT_CAPACITY, FlushPolicy.FULL);
+  }
+
+  @Override
+  public void println(String text) {
+    append(text);
+    append(LINE_SEPARATOR);
+    if (policy == FlushPolicy.LINE) flush();
+  }
+
+  @Override
+  public void flush() {
+    drain(true);
+  }
+
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      if (ownsChannel) {
+        try {
+          channel.close();
+        } catch (IOException error) {
+          throw new UncheckedIOException(error);
+        }
+      }
+    }
+  }
+
+  private void append(String text) {
+    int offset = 0;
+    while (offset < text.length()) {
+      if (!chars.hasRemaining()) drain(false);
+      int count = Math.min(chars.remaining(), text.length() - offset);
+      chars.put(text, offset, offset + count);
+      offset += count;
+    }
+  }
+
+  // Encodes the buffered chars and writes them to the channel. A surrogate pair split at the
+  // end of the buffer is kept for the next call, unless this is the final flush.
+  private void drain(boolean endOfInput) {
+    chars.flip();
+    try {
+      for (;;) {
+        CoderResult result = encoder.encode(chars, bytes, endOfInput);
+        write();
+        if (!result.isOverflow()) break;
+      }
+      if (endOfInput) {
+        encoder.flush(bytes);
+        write();
+        encoder.reset();
+      }
+    } catch (IOException error) {
+      throw new UncheckedIOException(error);
+    }
+    chars.compact();
+  }
+
+  private void write() throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+}
@@ -0,0 +1,52 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A compiled sequence of bytecode with its constant pool.
+// Instructions that may fail at run time keep the Token they come from, so the VM
+// reports the same RuntimeError (message and line) as the tree-walking Interpreter.
+class Chunk {
+  byte[] code = new byte[64];
+  Token[] tokens = new Token[64];
+  int count = 0;
+  private final List<Object> constants = new ArrayList<>();
+  // Equal literals share one entry of the pool.
+  private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+  void write(byte value, Token token) {
+    if (count == code.length) {
+      code = Arrays.copyOf(code, count * 2);
+      tokens = Arrays.copyOf(tokens, count * 2);
+    }
+    code[count] = value;
+    tokens[count] = token;
+    count++;
+  }
+
+  int addConstant(Object value) {
+    Integer index = constantIndexes.get(value);
+    if (index == null) {
+      index = constants.size();
+      constants.add(value);
+      constantIndexes.put(value, index);
+    }
+
+    return index;
+  }
+
+  Object[] constants() {
+    return constants.toArray();
+  }
+
+  int constantCount() {
+    return constants.size();
+  }
+
+  Object constant(int index) {
+    return constants.get(index);
+  }
+}
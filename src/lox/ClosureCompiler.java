@@ -0,0 +1,241 @@
+package lox;
+
+import java.util.List;
+
+// Engine between the Interpreter and the JIT: the tree is walked once and turned into a
+// tree of lambdas, each one bound to its operands and operator. Running the script then
+// calls the lambdas, with no visitor dispatch and no switch on the operator.
+// Subtrees that can only give numbers (number literals, '-', '*', '/' and '+' of numbers)
+// compile to NumberCode, which returns a double. Operators whose operands are all
+// NumberCode compute unboxed and skip the type checks. The rest checks the types like the
+// Interpreter, after evaluating both operands, so errors and their order are the same.
+final class ClosureCompiler implements Expression.Visitor<ClosureCompiler.Code>,
+                                       Stmt.Visitor<ClosureCompiler.Action> {
+  interface Code {
+    Object eval(Environment environment);
+  }
+
+  // Code known to give a number. eval() boxes, callers that take a double use number().
+  interface NumberCode extends Code {
+    double number(Environment environment);
+
+    @Override
+    default Object eval(Environment environment) {
+      return number(environment);
+    }
+  }
+
+  interface Action {
+    void run(Environment environment, OutputSink output);
+  }
+
+  private static final class Program implements CompiledCode {
+    private final Action[] actions;
+
+    Program(Action[] actions) {
+      this.actions = actions;
+    }
+
+    @Override
+    public void run(Environment globals, OutputSink output) {
+      for (Action action : actions) {
+        action.run(globals, output);
+      }
+    }
+  }
+
+  private static final ClosureCompiler INSTANCE = new ClosureCompiler();
+
+  private ClosureCompiler() {}
+
+  // Null when the statements hold an operator the Parser never makes, as a damaged
+  // snapshot can. They have to run in the Interpreter, which evaluates those to nil.
+  static CompiledCode compile(List<Stmt> statements) {
+    Action[] actions = new Action[statements.size()];
+    try {
+      for (int i = 0; i < actions.length; i++) {
+        actions[i] = statements.get(i).accept(INSTANCE);
+      }
+    } catch (IllegalArgumentException error) {
+      return null;
+    }
+    return new Program(actions);
+  }
+
+  private Code compile(Expression expr) {
+    return expr.accept(this);
+  }
+
+  @Override
+  public Action visitExprStmt(Stmt.Expr stmt) {
+    Code expression = compile(stmt.expression);
+    return (environment, output) -> expression.eval(environment);
+  }
+
+  @Override
+  public Action visitPrintStmt(Stmt.Print stmt) {
+    Code expression = compile(stmt.expression);
+    return (environment, output) ->
+        output.println(Interpreter.stringify(expression.eval(environment)));
+  }
+
+  @Override
+  public Action visitVarStmt(Stmt.Var stmt) {
+    int slot = stmt.slot;
+    if (stmt.initializer == null) {
+      return (environment, output) -> environment.define(slot, null);
+    }
+
+    Code initializer = compile(stmt.initializer);
+    return (environment, output) -> environment.define(slot, initializer.eval(environment));
+  }
+
+  @Override
+  public Code visitLiteralExpression(Expression.Literal expr) {
+    Object value = expr.value;
+    if (value instanceof Double) {
+      double number = (double) value;
+      return (NumberCode) environment -> number;
+    }
+    return environment -> value;
+  }
+
+  @Override
+  public Code visitGroupingExpression(Expression.Grouping expr) {
+    return compile(expr.expression);
+  }
+
+  @Override
+  public Code visitVariableExpression(Expression.Variable expr) {
+    int depth = expr.depth;
+    int slot = expr.slot;
+    Token name = expr.name;
+    return environment -> environment.get(depth, slot, name);
+  }
+
+  @Override
+  public Code visitUnaryExpression(Expression.Unary expr) {
+    Token operator = expr.operator;
+    Code right = compile(expr.right);
+    if (operator.type == TokenType.BANG) {
+      return environment -> !Interpreter.isTruthy(right.eval(environment));
+    }
+    if (operator.type != TokenType.MINUS) {
+      throw new IllegalArgumentException("Not a unary operator: " + operator.type + ".");
+    }
+
+    if (right instanceof NumberCode) {
+      NumberCode number = (NumberCode) right;
+      return (NumberCode) environment -> -number.number(environment);
+    }
+    return (NumberCode) environment -> {
+      Object value = right.eval(environment);
+      Interpreter.checkNumberOperand(operator, value);
+      return -(double) value;
+    };
+  }
+
+  @Override
+  public Code visitBinaryExpression(Expression.Binary expr) {
+    Token operator = expr.operator;
+    Code left = compile(expr.left);
+    Code right = compile(expr.right);
+    if (left instanceof NumberCode && right instanceof NumberCode) {
+      return numbers(operator.type, (NumberCode) left, (NumberCode) right);
+    }
+
+    switch (operator.type) {
+      case PLUS:
+        return environment ->
+            Interpreter.add(operator, left.eval(environment), right.eval(environment));
+      case MINUS:
+        return (NumberCode) environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a - (double) b;
+        };
+      case STAR:
+        return (NumberCode) environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a * (double) b;
+        };
+      case SLASH:
+        return (NumberCode) environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a / (double) b;
+        };
+      case GREATER:
+        return environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a > (double) b;
+        };
+      case GREATER_EQUAL:
+        return environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a >= (double) b;
+        };
+      case LESS:
+        return environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a < (double) b;
+        };
+      case LESS_EQUAL:
+        return environment -> {
+          Object a = left.eval(environment);
+          Object b = right.eval(environment);
+          Interpreter.checkNumberOperands(operator, a, b);
+          return (double) a <= (double) b;
+        };
+      case EQUAL_EQUAL:
+        return environment ->
+            Interpreter.isEqual(left.eval(environment), right.eval(environment));
+      case BANG_EQUAL:
+        return environment ->
+            !Interpreter.isEqual(left.eval(environment), right.eval(environment));
+      default:
+        throw new IllegalArgumentException("Not a binary operator: " + operator.type + ".");
+    }
+  }
+
+  // Both operands are numbers, nothing to check.
+  private static Code numbers(TokenType operator, NumberCode left, NumberCode right) {
+    switch (operator) {
+      case PLUS:
+        return (NumberCode) environment -> left.number(environment) + right.number(environment);
+      case MINUS:
+        return (NumberCode) environment -> left.number(environment) - right.number(environment);
+      case STAR:
+        return (NumberCode) environment -> left.number(environment) * right.number(environment);
+      case SLASH:
+        return (NumberCode) environment -> left.number(environment) / right.number(environment);
+      case GREATER:
+        return environment -> left.number(environment) > right.number(environment);
+      case GREATER_EQUAL:
+        return environment -> left.number(environment) >= right.number(environment);
+      case LESS:
+        return environment -> left.number(environment) < right.number(environment);
+      case LESS_EQUAL:
+        return environment -> left.number(environment) <= right.number(environment);
+      // Like Double.equals() in Interpreter.isEqual(): NaN equals NaN, 0 and -0 differ.
+      case EQUAL_EQUAL:
+        return environment -> Double.doubleToLongBits(left.number(environment)) ==
+                              Double.doubleToLongBits(right.number(environment));
+      case BANG_EQUAL:
+        return environment -> Double.doubleToLongBits(left.number(environment)) !=
+                              Double.doubleToLongBits(right.number(environment));
+      default:
+        throw new IllegalArgumentException("Not a binary operator: " + operator + ".");
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package lox;
+
+// A script compiled ahead of running, by JitCompiler or ClosureCompiler. Runs like
+// Interpreter.interpret(), except that a RuntimeError is thrown to the caller instead of
+// being reported. Compiled code holds no state of a run, so it can run again, on other
+// globals, and from several threads at once.
+interface CompiledCode {
+  void run(Environment globals, OutputSink output);
+}
@@ -0,0 +1,110 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A script scanned, parsed and resolved once, to be run many times with LoxContext.eval().
+// It is immutable once built (see below), so one CompiledScript can run on many contexts
+// at the same time. Each run gets its own fresh globals: a compiled script neither sees
+// nor changes the globals of the context running it.
+// Syntax errors are kept as well, and reported again by every run.
+//
+// The only writes to the tree after compiling are the Binary and Unary node
+// specializations, which are benign races: every node is correct for any operand types,
+// and the nodes are stateless singletons, so a thread seeing a stale one only takes a
+// slower path. Variable inline caches are never filled in a compiled script's tree.
+public final class CompiledScript {
+  final List<Stmt> statements;
+  final List<String> errors;
+  // The VM form, compiled on first use. Racing threads may both compile it, that is fine.
+  private volatile Chunk chunk;
+  private volatile List<String> chunkErrors;
+  // The JVM class form, compiled once the script is hot. See jit().
+  private final AtomicInteger runs = new AtomicInteger();
+  private volatile CompiledCode jitCode;
+  private volatile boolean jitFailed;
+  // The ClosureCompiler form, compiled on first use.
+  private volatile CompiledCode closures;
+  private volatile boolean closuresFailed;
+
+  private CompiledScript(List<Stmt> statements, List<String> errors) {
+    this.statements = statements;
+    this.errors = errors;
+  }
+
+  public static CompiledScript compile(CharSequence source) {
+    return compile(source, false);
+  }
+
+  // With optimize, the Optimizer folds constants before resolving.
+  public static CompiledScript compile(CharSequence source, boolean optimize) {
+    List<String> errors = new ArrayList<>();
+    ErrorReporter reporter = new ErrorReporter(errors::add, null);
+    // Slots are given by a Resolver of its own, so they do not depend on any context.
+    Scanner scanner = new Scanner(source, new SymbolTable(), reporter);
+    List<Stmt> statements = new Parser(scanner.scanPacked(), reporter).parse();
+    if (reporter.hadError) {
+      return new CompiledScript(Collections.emptyList(), Collections.unmodifiableList(errors));
+    }
+
+    if (optimize) statements = new Optimizer().optimize(statements);
+    new Resolver().resolve(statements);
+    return new CompiledScript(Collections.unmodifiableList(statements), Collections.emptyList());
+  }
+
+  public boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  // Null when the script does not fit in the bytecode format, see chunkErrors().
+  Chunk chunk() {
+    if (chunk == null && chunkErrors == null) {
+      List<String> errors = new ArrayList<>();
+      Chunk compiled = new Compiler(new ErrorReporter(errors::add, null)).compile(statements);
+      if (errors.isEmpty()) {
+        chunk = compiled;
+      } else {
+        chunkErrors = Collections.unmodifiableList(errors);
+      }
+    }
+    return chunk;
+  }
+
+  // Runs a script needs before jit() compiles it. Compiling takes longer than running a
+  // script a few times in the Interpreter.
+  static final int JIT_THRESHOLD = 10;
+
+  // Counts a run, and gives the compiled class once the script is hot. Null before that,
+  // and when the script cannot be compiled. Racing threads may both compile it, that is fine.
+  CompiledCode jit() {
+    if (jitCode != null || jitFailed) return jitCode;
+    if (runs.incrementAndGet() < JIT_THRESHOLD) return null;
+
+    CompiledCode code = JitCompiler.compile(statements);
+    if (code == null) {
+      jitFailed = true;
+    } else {
+      jitCode = code;
+    }
+    return code;
+  }
+
+  // Null when the script cannot be compiled.
+  CompiledCode closures() {
+    if (closures != null || closuresFailed) return closures;
+
+    CompiledCode code = ClosureCompiler.compile(statements);
+    if (code == null) {
+      closuresFailed = true;
+    } else {
+      closures = code;
+    }
+    return code;
+  }
+
+  List<String> chunkErrors() {
+    return chunkErrors == null ? Collections.emptyList() : chunkErrors;
+  }
+}
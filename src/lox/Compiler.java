@@ -0,0 +1,147 @@
+package lox;
+
+import java.util.List;
+
+// Turns the resolved AST into a Chunk for the VM. It walks the tree once, so the
+// visitor dispatch is paid at compile time instead of on every execution.
+class Compiler implements Expression.Visitor<Void>, Stmt.Visitor<Void> {
+  private final Chunk chunk = new Chunk();
+  private final ErrorReporter reporter;
+
+  Compiler() {
+    this(new ErrorReporter());
+  }
+
+  Compiler(ErrorReporter reporter) {
+    this.reporter = reporter;
+  }
+
+  Chunk compile(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      statement.accept(this);
+    }
+    emit(OpCode.RETURN, null);
+
+    return chunk;
+  }
+
+  @Override
+  public Void visitExprStmt(Stmt.Expr stmt) {
+    stmt.expression.accept(this);
+    emit(OpCode.POP, null);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    stmt.expression.accept(this);
+    emit(OpCode.PRINT, null);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    if (stmt.initializer != null) {
+      stmt.initializer.accept(this);
+    } else {
+      emit(OpCode.NIL, null);
+    }
+
+    emit(OpCode.DEFINE_GLOBAL, stmt.name);
+    emitSlot(stmt.slot, stmt.name);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpression(Expression.Binary expr) {
+    expr.left.accept(this);
+    expr.right.accept(this);
+
+    switch (expr.operator.type) {
+      case GREATER:       emit(OpCode.GREATER, expr.operator); break;
+      case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL, expr.operator); break;
+      case LESS:          emit(OpCode.LESS, expr.operator); break;
+      case LESS_EQUAL:    emit(OpCode.LESS_EQUAL, expr.operator); break;
+      case BANG_EQUAL:    emit(OpCode.NOT_EQUAL, expr.operator); break;
+      case EQUAL_EQUAL:   emit(OpCode.EQUAL, expr.operator); break;
+      case MINUS:         emit(OpCode.SUBTRACT, expr.operator); break;
+      case PLUS:          emit(OpCode.ADD, expr.operator); break;
+      case SLASH:         emit(OpCode.DIVIDE, expr.operator); break;
+      case STAR:          emit(OpCode.MULTIPLY, expr.operator); break;
+      default:
+        // Same as the Interpreter: an unknown operator evaluates to nil.
+        emit(OpCode.POP, null);
+        emit(OpCode.POP, null);
+        emit(OpCode.NIL, null);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpression(Expression.Grouping expr) {
+    expr.expression.accept(this);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpression(Expression.Literal expr) {
+    if (expr.value == null) {
+      emit(OpCode.NIL, null);
+    } else if (expr.value.equals(true)) {
+      emit(OpCode.TRUE, null);
+    } else if (expr.value.equals(false)) {
+      emit(OpCode.FALSE, null);
+    } else {
+      int index = chunk.addConstant(expr.value);
+      if (index <= 0xffff) {
+        emit(OpCode.CONSTANT, null);
+        emitShort(index);
+      } else {
+        emit(OpCode.CONSTANT_LONG, null);
+        emitShort(index >>> 16);
+        emitShort(index);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpression(Expression.Variable expr) {
+    emit(OpCode.GET_VARIABLE, expr.name);
+    emit((byte) expr.depth, null);
+    emitSlot(expr.slot, expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpression(Expression.Unary expr) {
+    expr.right.accept(this);
+
+    switch (expr.operator.type) {
+      case MINUS: emit(OpCode.NEGATE, expr.operator); break;
+      case BANG:  emit(OpCode.NOT, expr.operator); break;
+      default:
+        emit(OpCode.POP, null);
+        emit(OpCode.NIL, null);
+    }
+    return null;
+  }
+
+  private void emit(byte value, Token token) {
+    chunk.write(value, token);
+  }
+
+  // Slots are encoded in two bytes. More variables than that is reported as a compile error,
+  // LoxContext then refuses to execute the chunk.
+  private void emitSlot(int slot, Token name) {
+    if (slot > 0xffff) {
+      reporter.error(name, "Too many variables for the bytecode VM.");
+    }
+    emitShort(slot);
+  }
+
+  private void emitShort(int value) {
+    emit((byte) ((value >> 8) & 0xff), null);
+    emit((byte) (value & 0xff), null);
+  }
+}
@@ -1,26 +1,75 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+// Variables are stored in a flat array. The Resolver assigns every variable a slot in
+// its scope before running, so reads and writes are plain array accesses without hashing names.
+// The array also works as the version of the environment for the inline caches of
+// Expression.Variable: define() replaces it only when it has to grow, and every environment
+// has its own, so a cache holding the current array is known to be for this environment and
+// up to date. See Interpreter.visitVariableExpression().
 public class Environment {
-  private final Map<String, Object> values = new HashMap();
+  // Marks a slot whose variable has been resolved but not defined yet at run time.
+  private static final Object UNDEFINED = new Object();
 
-  Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+  final Environment enclosing;
+  private Object[] values;
+  // Slots that are not UNDEFINED, so size() does not scan them.
+  private int defined = 0;
+
+  Environment() {
+    this(null, 8);
+  }
+
+  Environment(Environment enclosing, int size) {
+    this.enclosing = enclosing;
+    this.values = new Object[Math.max(size, 1)];
+    Arrays.fill(values, UNDEFINED);
+  }
+
+  // The token is only needed to report the error when the variable is not defined yet.
+  Object get(int depth, int slot, Token name) {
+    Object[] slots = ancestor(depth).values;
+    if (slot < slots.length) {
+      Object value = slots[slot];
+      if (value != UNDEFINED) return value;
     }
 
     throw new RuntimeError(name,
       "Undefined variable '" + name.lexeme + "'.");
   }
-  
-  // Inserts a new entry in the map. Meaning new variable definition.
+
+  // The current values, for the inline caches. Slots that are not defined yet are UNDEFINED.
+  Object[] values() {
+    return values;
+  }
+
+  // Stores a new variable definition in its slot.
   // TODO ver como modificar esto para impedir redefiniciones de variables.
   // Facil, solo comprobar si existe, y si es asi decidir si cambia el valor o dar error de sintaxis.
   // Aunque interacciona mal con la REPL. Ver consideraciones en pag 120 Crafting interpreters.
-  void define(String name, Object value) {
-    values.put(name, value);
+  void define(int slot, Object value) {
+    if (slot >= values.length) {
+      // Globals keep growing while the REPL resolves new lines.
+      int oldLength = values.length;
+      values = Arrays.copyOf(values, Math.max(slot + 1, oldLength * 2));
+      Arrays.fill(values, oldLength, values.length, UNDEFINED);
+    }
+    if (values[slot] == UNDEFINED) defined++;
+    values[slot] = value;
+  }
+
+  // Number of variables defined so far.
+  int size() {
+    return defined;
   }
-}
 
+  private Environment ancestor(int depth) {
+    Environment environment = this;
+    for (int i = 0; i < depth; i++) {
+      environment = environment.enclosing;
+    }
+
+    return environment;
+  }
+}
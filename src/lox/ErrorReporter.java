@@ -0,0 +1,63 @@
+package lox;
+
+import java.util.function.Consumer;
+
+// Collects the syntax and runtime errors of one run. Each LoxContext has its own, so
+// scripts running at the same time do not see each other's errors.
+class ErrorReporter {
+  boolean hadError = false;
+  boolean hadRuntimeError = false;
+  private final Consumer<String> errors;
+  private final OutputSink output;
+
+  // Prints to System.err. For components used on their own, outside a LoxContext.
+  ErrorReporter() {
+    this(System.err::println, null);
+  }
+
+  // Errors are unbuffered. When output is given, it is flushed before each error, so both
+  // keep their order when they end up in the same place.
+  ErrorReporter(Consumer<String> errors, OutputSink output) {
+    this.errors = errors;
+    this.output = output;
+  }
+
+  void reset() {
+    hadError = false;
+    hadRuntimeError = false;
+  }
+
+  void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+
+  // Reports an error another reporter has already formatted, e.g. one of ParallelParser's.
+  void error(String formatted) {
+    if (output != null) output.flush();
+    errors.accept(formatted);
+    hadError = true;
+  }
+
+  void runtimeError(RuntimeError error) {
+    if (output != null) output.flush();
+    errors.accept(error.getMessage() +
+        "\n[line " + error.token.line + "]");
+    hadRuntimeError = true;
+  }
+
+  // TODO dar mensaje mas detallado sobre la columna donde se encuentra el error, no solo la linea.
+  private void report(int line, String where, String message) {
+    if (output != null) output.flush();
+    errors.accept(
+        "[line " + line + "] Error" + where + ": " + message);
+    hadError = true;
+  }
+}
@@ -25,6 +25,7 @@ abstract class Expression {
     final Expression left;
     final Token operator;
     final Expression right;
+    BinaryNode node = BinaryNode.UNINITIALIZED;
   }
   static class Grouping extends Expression {
     Grouping(Expression expression) {
@@ -61,6 +62,9 @@ abstract class Expression {
     }
 
     final Token name;
+    int depth;
+    int slot;
+    Object[] cache;
   }
   static class Unary extends Expression {
     Unary(Token operator, Expression right) {
@@ -75,6 +79,7 @@ abstract class Expression {
 
     final Token operator;
     final Expression right;
+    UnaryNode node = UnaryNode.UNINITIALIZED;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -6,27 +6,69 @@ public class Interpreter implements Expression.Visitor<Object>,
                                     Stmt.Visitor<Void> {
 
   private Environment environment = new Environment();
+  private final OutputSink output;
+  private final ErrorReporter reporter;
+  // False while running a tree the Interpreter does not own, see visitVariableExpression().
+  private boolean ownsTree = true;
+  // Side channel of evaluateNumber(). See there.
+  boolean isNumber;
+  Object nonNumber;
   
+  Interpreter() {
+    this(OutputSink.of(System.out), new ErrorReporter());
+  }
+
+  Interpreter(OutputSink output, ErrorReporter reporter) {
+    this.output = output;
+    this.reporter = reporter;
+  }
+
+  Environment globals() {
+    return environment;
+  }
+
   @Override
   public Object visitLiteralExpression(Expression.Literal expr) {
     return expr.value;
   }
 
-  void interpret (List<Stmt> statements) {
+  // Runs with the given globals instead of the Interpreter's own. See CompiledScript: the
+  // tree is shared, so no inline cache is filled in it.
+  boolean interpret (List<Stmt> statements, Environment globals) {
+    Environment previous = this.environment;
+    boolean previousOwnsTree = this.ownsTree;
+    this.environment = globals;
+    this.ownsTree = false;
+    try {
+      return interpret(statements);
+    } finally {
+      this.environment = previous;
+      this.ownsTree = previousOwnsTree;
+    }
+  }
+
+  // Returns false when a runtime error stopped the execution.
+  boolean interpret (List<Stmt> statements) {
     try {
       for (Stmt statement : statements) {
         execute(statement);
       }
+      return true;
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      reporter.runtimeError(error);
+      return false;
     }
   }
 
   // Evaluate unary expressions. Single subexpression to evaluate.
+  // The work is done by the node the expression specialized into. See UnaryNode.
   @Override 
   public Object visitUnaryExpression (Expression.Unary expr) {
-    Object right = evaluate(expr.right);
+    return expr.node.execute(this, expr);
+  }
 
+  // Generic path for unary operators, with the operand already evaluated.
+  Object unary(Expression.Unary expr, Object right) {
     switch (expr.operator.type) {
       case MINUS:
         checkNumberOperand(expr.operator, right);
@@ -38,34 +80,60 @@ public class Interpreter implements Expression.Visitor<Object>,
     return null;
   }
 
+  // Monomorphic inline cache. After a successful read of a variable of the current scope,
+  // the node keeps the values array it was read from. While the environment still has that
+  // array the slot is known to be in bounds and defined, so a read is one compare and one
+  // load. Another environment or a grown array misses, and the slow path fills the cache
+  // again.
+  // Only trees of this Interpreter (REPL lines, files) are cached. A CompiledScript runs
+  // with fresh globals every time, so its first read would always miss, and every thread
+  // running it would keep writing the shared node and keeping its globals alive.
   @Override
   public Object visitVariableExpression(Expression.Variable expr) {
-    return environment.get(expr.name);
+    Object[] cached = expr.cache;
+    if (cached == environment.values()) return cached[expr.slot];
+
+    Object value = environment.get(expr.depth, expr.slot, expr.name);
+    if (expr.depth == 0 && ownsTree) expr.cache = environment.values();
+    return value;
   }
 
-  private void checkNumberOperand(Token operator, Object operand) {
+  static void checkNumberOperand(Token operator, Object operand) {
     if (operand instanceof Double) return;
     throw new RuntimeError(operator, "Operand must be a number.");
   }
 
-  private void checkNumberOperands (Token operator, Object left, Object right) {
+  static void checkNumberOperands (Token operator, Object left, Object right) {
     if (left instanceof Double && right instanceof Double) return;
     throw new RuntimeError(operator, "Operands must be numbers");
   }
 
-  private boolean isTruthy(Object object) {
+  // Shared with the VM, so both engines give the same result and error for '+'.
+  static Object add(Token operator, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double) {
+      return (double)left + (double)right;
+    }
+    if (LoxString.isString(left) && LoxString.isString(right)) {
+      return LoxString.concat(operator, left, right);
+    }
+    throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+  }
+
+  static boolean isTruthy(Object object) {
     if (object == null) return false;
     if (object instanceof Boolean) return (boolean) object;
     return true;
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if (a == null && b == null) return true;
     if (a == null) return false;
+    // A String does not know it may equal a LoxString, ask the rope.
+    if (b instanceof LoxString) return b.equals(a);
     return a.equals(b);
   }
 
-  private String stringify(Object object) {
+  static String stringify(Object object) {
     if (object == null) return "nil";
 
     if (object instanceof Double) {
@@ -86,13 +154,13 @@ public class Interpreter implements Expression.Visitor<Object>,
     return evaluate(expr.expression);
   }
 
-  private Object evaluate(Expression expr) {
+  Object evaluate(Expression expr) {
     return expr.accept(this);
   }
 
   // It is the Statement's analogue to evaluate for expressions. As statements
   // are side effects but generates no value/variable.
-  private void execute(Stmt stmt) {
+  void execute(Stmt stmt) {
     stmt.accept(this);
   }
 
@@ -105,7 +173,7 @@ public class Interpreter implements Expression.Visitor<Object>,
   @Override
   public Void visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    output.println(stringify(value));
     return null;
   }
 
@@ -117,15 +185,19 @@ public class Interpreter implements Expression.Visitor<Object>,
       value = evaluate(stmt.initializer);
     }
 
-    environment.define(stmt.name.lexeme, value);
+    environment.define(stmt.slot, value);
     return null;
   }
 
+  // The work is done by the node the expression specialized into. See BinaryNode.
   @Override
   public Object visitBinaryExpression (Expression.Binary expr) {
-    Object left = evaluate(expr.left);
-    Object right = evaluate(expr.right);
+    return expr.node.execute(this, expr);
+  }
 
+  // Generic path for binary operators with boxed operands. Both operands are already
+  // evaluated, left first, so type errors are raised in the same order as always.
+  Object binary(Expression.Binary expr, Object left, Object right) {
     switch (expr.operator.type) {
       case GREATER:
         checkNumberOperands(expr.operator, left, right);
@@ -145,13 +217,7 @@ public class Interpreter implements Expression.Visitor<Object>,
         checkNumberOperands(expr.operator, left, right);
         return (double)left - (double)right;
       case PLUS:
-        if (left instanceof Double && right instanceof Double) {
-          return (double)left + (double)right;
-        }
-        if (left instanceof String && right instanceof String) {
-          return (double)left + (double)right;
-        }
-        throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+        return add(expr.operator, left, right);
 
       case SLASH:
         checkNumberOperands(expr.operator, left, right);
@@ -165,4 +231,35 @@ public class Interpreter implements Expression.Visitor<Object>,
     // Unreachable
     return null;
   }
+
+  // Unboxed fast path for numbers. Evaluates expr as a primitive double without allocating.
+  // When the value turns out not to be a number, isNumber is cleared and the boxed value is
+  // left in nonNumber, so the caller can fall back to the generic path. Callers must check
+  // isNumber right after every call, before evaluating anything else.
+  double evaluateNumber(Expression expr) {
+    if (expr instanceof Expression.Binary) {
+      Expression.Binary binary = (Expression.Binary) expr;
+      return binary.node.executeNumber(this, binary);
+    } else if (expr instanceof Expression.Unary) {
+      Expression.Unary unary = (Expression.Unary) expr;
+      return unary.node.executeNumber(this, unary);
+    } else if (expr instanceof Expression.Grouping) {
+      return evaluateNumber(((Expression.Grouping) expr).expression);
+    } else if (expr instanceof Expression.Literal) {
+      return unbox(((Expression.Literal) expr).value);
+    }
+
+    return unbox(evaluate(expr));
+  }
+
+  double unbox(Object value) {
+    if (value instanceof Double) {
+      isNumber = true;
+      return (double) value;
+    }
+
+    isNumber = false;
+    nonNumber = value;
+    return 0;
+  }
 }
@@ -0,0 +1,397 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Optional tier that turns resolved statements into a JVM class, so HotSpot compiles the
+// script itself instead of the Interpreter that walks it. There is no bytecode library in
+// the JDK 17 we build with, so the class file is written by hand. It only needs a handful of
+// instructions: the language has no control flow yet, so the code is a straight line of
+// loads and calls to JitRuntime, which does what the Interpreter does for each operation.
+// Without branches the methods need no stack map frames.
+// Literals and tokens are not put in the class. Each method gets them in an Object[], and
+// runtime errors carry the tokens of the tree, with their lines.
+// The class is a hidden class of this package, so it can call the package private
+// JitRuntime, and it is unloaded once its Code is no longer used.
+final class JitCompiler implements Expression.Visitor<Void>, Stmt.Visitor<Void> {
+  // HotSpot does not compile methods bigger than 8000 bytes of bytecode, so the statements
+  // are spread over methods, called parts, of about this size.
+  private static final int PART_SIZE = 4000;
+  // Limits of the class file format.
+  private static final int MAX_CODE = 65535;
+  private static final int MAX_POOL = 65535;
+
+  private static final String CLASS_NAME = "lox/JitScript";
+  private static final String RUNTIME = "lox/JitRuntime";
+  private static final String TOKEN_CLASS = "lox/Token";
+  private static final String TOKEN = "Llox/Token;";
+  private static final String OBJECT = "Ljava/lang/Object;";
+  private static final String BINARY = "(" + TOKEN + OBJECT + OBJECT + ")" + OBJECT;
+  private static final String UNARY = "(" + TOKEN + OBJECT + ")" + OBJECT;
+  private static final String GET = "(Llox/Environment;II" + TOKEN + ")" + OBJECT;
+  private static final String DEFINE = "(Llox/Environment;I" + OBJECT + ")V";
+  private static final String PRINT = "(Llox/OutputSink;" + OBJECT + ")V";
+  // Every part is static void partN(Environment globals, OutputSink output, Object[] constants).
+  private static final String PART = "(Llox/Environment;Llox/OutputSink;[" + OBJECT + ")V";
+  private static final MethodType PART_TYPE =
+      MethodType.methodType(void.class, Environment.class, OutputSink.class, Object[].class);
+
+  private static final int ACONST_NULL = 0x01;
+  private static final int ICONST_0 = 0x03;
+  private static final int BIPUSH = 0x10;
+  private static final int SIPUSH = 0x11;
+  private static final int LDC_W = 0x13;
+  private static final int ALOAD_0 = 0x2a;
+  private static final int ALOAD_1 = 0x2b;
+  private static final int ALOAD_2 = 0x2c;
+  private static final int AALOAD = 0x32;
+  private static final int POP = 0x57;
+  private static final int RETURN = 0xb1;
+  private static final int INVOKESTATIC = 0xb8;
+  private static final int CHECKCAST = 0xc0;
+
+  static final class Code implements CompiledCode {
+    private final MethodHandle[] parts;
+    private final Object[][] constants;
+
+    private Code(MethodHandle[] parts, Object[][] constants) {
+      this.parts = parts;
+      this.constants = constants;
+    }
+
+    @Override
+    public void run(Environment globals, OutputSink output) {
+      for (int i = 0; i < parts.length; i++) {
+        try {
+          parts[i].invokeExact(globals, output, constants[i]);
+        } catch (RuntimeException | Error error) {
+          throw error;
+        } catch (Throwable error) {
+          // The generated methods throw nothing checked.
+          throw new IllegalStateException(error);
+        }
+      }
+    }
+  }
+
+  // The script does not fit in the class file format.
+  private static class TooLarge extends RuntimeException {}
+
+  private static final class Bytes extends ByteArrayOutputStream {
+    void u1(int value) {
+      write(value);
+    }
+
+    void u2(int value) {
+      write(value >>> 8);
+      write(value);
+    }
+
+    void u4(int value) {
+      u2(value >>> 16);
+      u2(value);
+    }
+  }
+
+  private final Bytes pool = new Bytes();
+  private final Map<String, Integer> poolIndex = new HashMap<>();
+  private int poolCount = 1;
+
+  private final List<byte[]> partCode = new ArrayList<>();
+  private final List<Integer> partMaxStack = new ArrayList<>();
+  private final List<Object[]> partConstants = new ArrayList<>();
+
+  // The part being written.
+  private Bytes code = new Bytes();
+  private List<Object> constants = new ArrayList<>();
+  private int stack = 0;
+  private int maxStack = 0;
+
+  private JitCompiler() {}
+
+  // Null when the statements cannot be compiled, and have to run in the Interpreter.
+  static Code compile(List<Stmt> statements) {
+    try {
+      return new JitCompiler().build(statements);
+    } catch (TooLarge | LinkageError | ReflectiveOperationException error) {
+      return null;
+    } catch (IllegalArgumentException error) {
+      // An operator the Parser never makes, as a damaged snapshot can hold. The
+      // Interpreter evaluates those to nil.
+      return null;
+    }
+  }
+
+  private Code build(List<Stmt> statements) throws ReflectiveOperationException {
+    for (Stmt statement : statements) {
+      statement.accept(this);
+      if (code.size() >= PART_SIZE) endPart();
+    }
+    if (code.size() > 0 || partCode.isEmpty()) endPart();
+
+    MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile(), true);
+    MethodHandle[] parts = new MethodHandle[partCode.size()];
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = lookup.findStatic(lookup.lookupClass(), "part" + i, PART_TYPE);
+    }
+
+    return new Code(parts, partConstants.toArray(new Object[0][]));
+  }
+
+  @Override
+  public Void visitExprStmt(Stmt.Expr stmt) {
+    stmt.expression.accept(this);
+    op(POP, -1);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    op(ALOAD_1, 1);
+    stmt.expression.accept(this);
+    invoke("print", PRINT, 2, false);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    op(ALOAD_0, 1);
+    pushInt(stmt.slot);
+    if (stmt.initializer != null) {
+      stmt.initializer.accept(this);
+    } else {
+      op(ACONST_NULL, 1);
+    }
+    invoke("define", DEFINE, 3, false);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpression(Expression.Binary expr) {
+    constant(expr.operator, TOKEN_CLASS);
+    expr.left.accept(this);
+    expr.right.accept(this);
+    invoke(binaryOperation(expr.operator.type), BINARY, 3, true);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpression(Expression.Grouping expr) {
+    expr.expression.accept(this);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpression(Expression.Literal expr) {
+    if (expr.value == null) {
+      op(ACONST_NULL, 1);
+    } else {
+      constant(expr.value, null);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpression(Expression.Variable expr) {
+    op(ALOAD_0, 1);
+    pushInt(expr.depth);
+    pushInt(expr.slot);
+    constant(expr.name, TOKEN_CLASS);
+    invoke("get", GET, 4, true);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpression(Expression.Unary expr) {
+    constant(expr.operator, TOKEN_CLASS);
+    expr.right.accept(this);
+    invoke(unaryOperation(expr.operator.type), UNARY, 2, true);
+    return null;
+  }
+
+  private static String unaryOperation(TokenType operator) {
+    switch (operator) {
+      case MINUS: return "negate";
+      case BANG: return "not";
+      default: throw new IllegalArgumentException("Not a unary operator: " + operator + ".");
+    }
+  }
+
+  private static String binaryOperation(TokenType operator) {
+    switch (operator) {
+      case PLUS: return "add";
+      case MINUS: return "subtract";
+      case STAR: return "multiply";
+      case SLASH: return "divide";
+      case GREATER: return "greater";
+      case GREATER_EQUAL: return "greaterEqual";
+      case LESS: return "less";
+      case LESS_EQUAL: return "lessEqual";
+      case EQUAL_EQUAL: return "equal";
+      case BANG_EQUAL: return "notEqual";
+      default: throw new IllegalArgumentException("Not a binary operator: " + operator + ".");
+    }
+  }
+
+  private void op(int opcode, int stackChange) {
+    code.u1(opcode);
+    stack += stackChange;
+    maxStack = Math.max(maxStack, stack);
+  }
+
+  private void pushInt(int value) {
+    if (value >= 0 && value <= 5) {
+      op(ICONST_0 + value, 1);
+    } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      op(BIPUSH, 1);
+      code.u1(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      op(SIPUSH, 1);
+      code.u2(value);
+    } else {
+      int index = integer(value);
+      op(LDC_W, 1);
+      code.u2(index);
+    }
+  }
+
+  // Loads constants[index] of the part, cast to type unless it is null.
+  private void constant(Object value, String type) {
+    op(ALOAD_2, 1);
+    pushInt(constants.size());
+    op(AALOAD, -1);
+    constants.add(value);
+    if (type != null) {
+      int index = classRef(type);
+      op(CHECKCAST, 0);
+      code.u2(index);
+    }
+  }
+
+  private void invoke(String name, String descriptor, int arguments, boolean returns) {
+    int index = methodRef(RUNTIME, name, descriptor);
+    op(INVOKESTATIC, (returns ? 1 : 0) - arguments);
+    code.u2(index);
+  }
+
+  private void endPart() {
+    op(RETURN, 0);
+    if (code.size() > MAX_CODE) throw new TooLarge();
+    utf8("part" + partCode.size());
+    partCode.add(code.toByteArray());
+    partMaxStack.add(maxStack);
+    partConstants.add(constants.toArray());
+    code = new Bytes();
+    constants = new ArrayList<>();
+    stack = 0;
+    maxStack = 0;
+  }
+
+  private byte[] classFile() {
+    int thisClass = classRef(CLASS_NAME);
+    int superClass = classRef("java/lang/Object");
+    int codeName = utf8("Code");
+    int partDescriptor = utf8(PART);
+
+    Bytes out = new Bytes();
+    out.u4(0xcafebabe);
+    out.u2(0);
+    out.u2(61); // Java 17
+    out.u2(poolCount);
+    out.writeBytes(pool.toByteArray());
+    out.u2(0x0010 | 0x0020); // ACC_FINAL, ACC_SUPER
+    out.u2(thisClass);
+    out.u2(superClass);
+    out.u2(0); // Interfaces.
+    out.u2(0); // Fields.
+    out.u2(partCode.size());
+    for (int i = 0; i < partCode.size(); i++) {
+      byte[] body = partCode.get(i);
+      out.u2(0x0008); // ACC_STATIC
+      out.u2(utf8("part" + i));
+      out.u2(partDescriptor);
+      out.u2(1); // The Code attribute.
+      out.u2(codeName);
+      out.u4(12 + body.length);
+      out.u2(partMaxStack.get(i));
+      out.u2(3); // The parameters are the only locals.
+      out.u4(body.length);
+      out.writeBytes(body);
+      out.u2(0); // Exception table.
+      out.u2(0); // Attributes.
+    }
+    out.u2(0); // Class attributes.
+    return out.toByteArray();
+  }
+
+  // Constant pool entries, each written once. Only names and descriptors of our own end up
+  // here, all ASCII, which is the same in UTF-8 and in the modified UTF-8 of class files.
+
+  private int utf8(String value) {
+    String key = "U" + value;
+    Integer index = poolIndex.get(key);
+    if (index != null) return index;
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    pool.u1(1);
+    pool.u2(bytes.length);
+    pool.writeBytes(bytes);
+    return addEntry(key);
+  }
+
+  private int integer(int value) {
+    String key = "I" + value;
+    Integer index = poolIndex.get(key);
+    if (index != null) return index;
+
+    pool.u1(3);
+    pool.u4(value);
+    return addEntry(key);
+  }
+
+  private int classRef(String name) {
+    String key = "C" + name;
+    Integer index = poolIndex.get(key);
+    if (index != null) return index;
+
+    int nameIndex = utf8(name);
+    pool.u1(7);
+    pool.u2(nameIndex);
+    return addEntry(key);
+  }
+
+  private int methodRef(String owner, String name, String descriptor) {
+    String key = "M" + owner + "." + name + descriptor;
+    Integer index = poolIndex.get(key);
+    if (index != null) return index;
+
+    int ownerIndex = classRef(owner);
+    int nameIndex = utf8(name);
+    int descriptorIndex = utf8(descriptor);
+    String nameAndTypeKey = "N" + name + descriptor;
+    Integer nameAndType = poolIndex.get(nameAndTypeKey);
+    if (nameAndType == null) {
+      pool.u1(12);
+      pool.u2(nameIndex);
+      pool.u2(descriptorIndex);
+      nameAndType = addEntry(nameAndTypeKey);
+    }
+    pool.u1(10);
+    pool.u2(ownerIndex);
+    pool.u2(nameAndType);
+    return addEntry(key);
+  }
+
+  private int addEntry(String key) {
+    if (poolCount >= MAX_POOL) throw new TooLarge();
+    poolIndex.put(key, poolCount);
+    return poolCount++;
+  }
+}
@@ -0,0 +1,77 @@
+package lox;
+
+// Operations called by the classes JitCompiler generates. Each one is what the Interpreter
+// does for the same node with its operands already evaluated, down to the runtime errors
+// and their tokens. They are small and static, so HotSpot inlines them into the generated
+// code once it gets hot.
+final class JitRuntime {
+  private JitRuntime() {}
+
+  static Object add(Token operator, Object left, Object right) {
+    return Interpreter.add(operator, left, right);
+  }
+
+  static Object subtract(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left - (double)right;
+  }
+
+  static Object multiply(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left * (double)right;
+  }
+
+  static Object divide(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left / (double)right;
+  }
+
+  static Object greater(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left > (double)right;
+  }
+
+  static Object greaterEqual(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left >= (double)right;
+  }
+
+  static Object less(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left < (double)right;
+  }
+
+  static Object lessEqual(Token operator, Object left, Object right) {
+    Interpreter.checkNumberOperands(operator, left, right);
+    return (double)left <= (double)right;
+  }
+
+  static Object equal(Token operator, Object left, Object right) {
+    return Interpreter.isEqual(left, right);
+  }
+
+  static Object notEqual(Token operator, Object left, Object right) {
+    return !Interpreter.isEqual(left, right);
+  }
+
+  static Object negate(Token operator, Object right) {
+    Interpreter.checkNumberOperand(operator, right);
+    return -(double)right;
+  }
+
+  static Object not(Token operator, Object right) {
+    return !Interpreter.isTruthy(right);
+  }
+
+  static Object get(Environment environment, int depth, int slot, Token name) {
+    return environment.get(depth, slot, name);
+  }
+
+  static void define(Environment environment, int slot, Object value) {
+    environment.define(slot, value);
+  }
+
+  static void print(OutputSink output, Object value) {
+    output.println(Interpreter.stringify(value));
+  }
+}
@@ -4,40 +4,156 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
 //import java.util.Scanner;
 
 import lox.Token;
 import lox.TokenType;
 import lox.Scanner;
 
+// Command line front end. Everything runs in one LoxContext, see there for embedding.
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    // Lines and node kinds listed by the profile report.
+    private static final int PROFILE_TOP = 10;
+
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]:");
+        String script = null;
+        String outputPath = null;
+        String profilePath = null;
+        boolean useVm = false;
+        boolean optimize = false;
+        boolean lazyTokens = false;
+        boolean stream = false;
+        boolean snapshot = false;
+        boolean parallel = false;
+        boolean stats = false;
+        boolean jit = false;
+        boolean closures = false;
+        boolean nanBoxing = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--output") && i + 1 < args.length) {
+                outputPath = args[++i];
+            } else if (arg.equals("--profile") && i + 1 < args.length) {
+                // Count and time every node the Interpreter runs. The report of the hottest
+                // lines and nodes goes to stderr at exit, the collapsed stacks for a flame
+                // graph to the file. Only for the tree-walker, so not with --vm, --nan-boxing,
+                // --jit or --closures.
+                profilePath = args[++i];
+            } else if (arg.equals("--vm")) {
+                // Execution engine. The tree-walker is the default.
+                useVm = true;
+            } else if (arg.equals("--optimize")) {
+                // Run the Optimizer over the parsed statements before resolving them.
+                optimize = true;
+            } else if (arg.equals("--lazy-tokens")) {
+                // Let the Parser pull tokens from the Scanner instead of scanning the whole source
+                // first. Scan errors are then reported mixed with parse errors, in source order.
+                lazyTokens = true;
+            } else if (arg.equals("--stream")) {
+                // Run every top-level statement as soon as it is parsed, instead of parsing the
+                // whole script first. See LoxContext.runStreaming().
+                stream = true;
+            } else if (arg.equals("--snapshot")) {
+                // Keep the parsed script in script.loxc and reuse it while the source does not
+                // change. See AstSnapshot.
+                snapshot = true;
+            } else if (arg.equals("--parallel")) {
+                // Scan and parse big scripts on all cores. See ParallelScanner and
+                // ParallelParser. Takes precedence over --lazy-tokens, streaming runs are
+                // not affected.
+                parallel = true;
+            } else if (arg.equals("--jit")) {
+                // Compile scripts to JVM classes instead of walking their tree. See JitCompiler.
+                // Ignored with --vm. Only for whole scripts, so not with --stream or the REPL.
+                jit = true;
+            } else if (arg.equals("--closures")) {
+                // Compile scripts to trees of lambdas and run those. See ClosureCompiler.
+                // Ignored with --vm. With --jit, runs what the JIT cannot compile.
+                closures = true;
+            } else if (arg.equals("--nan-boxing")) {
+                // The bytecode VM, with values NaN-boxed in longs. See NanBoxVM.
+                useVm = true;
+                nanBoxing = true;
+            } else if (arg.equals("--stats")) {
+                // Print the RunStats of every eval to stderr, as JSON.
+                stats = true;
+            } else if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                usage();
+            }
+        }
+
+        // The profiler only sees nodes the tree-walker runs, it would report nothing.
+        if (profilePath != null && (useVm || jit || closures)) {
+            System.err.println("--profile cannot be used with --vm, --nan-boxing, --jit or --closures.");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+        // Each statement would get a class of its own, run once: slower than walking it.
+        if (jit && (stream || script == null)) {
+            System.err.println("--jit needs a script, and cannot be used with --stream.");
+            System.exit(64);
+        }
+
+        // Scripts get buffered output, flushed after running. The REPL prints straight away.
+        OutputSink output;
+        if (outputPath != null) {
+            output = BufferedSink.file(Paths.get(outputPath));
+        } else if (script != null) {
+            output = BufferedSink.stdout();
         } else {
-            runPrompt();
+            output = OutputSink.of(System.out);
+        }
+        LoxContext context = new LoxContext(output, System.err::println);
+        context.useVm(useVm);
+        context.nanBoxing(nanBoxing);
+        context.optimize(optimize);
+        context.lazyTokens(lazyTokens);
+        context.stream(stream);
+        context.snapshot(snapshot);
+        context.parallel(parallel);
+        context.collectStats(stats);
+        context.jit(jit);
+        context.closures(closures);
+        Profiler profiler = null;
+        if (profilePath != null) {
+            profiler = new Profiler();
+            context.profile(profiler);
         }
+
+        LoxContext.Status status = LoxContext.Status.OK;
+        // Closing the sink closes the --output file. Standard output stays open.
+        try (output) {
+            if (script != null) {
+                status = runFile(context, script);
+            } else {
+                runPrompt(context);
+            }
         }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        if (profiler != null) {
+            profiler.report(System.err, PROFILE_TOP);
+            profiler.writeCollapsed(Paths.get(profilePath));
+        }
 
         // Indicate if an error exists in the code
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (status == LoxContext.Status.SYNTAX_ERROR) System.exit(65);
+        if (status == LoxContext.Status.RUNTIME_ERROR) System.exit(70);
+        }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--optimize] [--lazy-tokens] [--stream] [--snapshot] [--parallel] [--output file] [--profile file] [--stats] [--jit] [--closures] [--nan-boxing] [script]:");
+        System.exit(64);
     }
 
-    private static void runPrompt() throws IOException {
+    private static LoxContext.Status runFile(LoxContext context, String path) throws IOException {
+        LoxContext.Status status = context.evalFile(Paths.get(path), Charset.defaultCharset());
+        printStats(context);
+        return status;
+    }
+
+    private static void runPrompt(LoxContext context) throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
 
@@ -45,44 +161,12 @@ public class Lox {
             System.out.printf("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            context.eval(line);
+            printStats(context);
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        // Stop if there was a syntax error.
-        if (hadError) return;
-        
-        interpreter.interpret(statements);
-    }
-
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-            "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
-    }
-
-    // TODO dar mensaje mas detallado sobre la columna donde se encuentra el error, no solo la linea.
-    private static void report(int line, String where, String message) {
-        System.err.println(
-            "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-          report(token.line, " at end", message);
-        } else {
-          report(token.line, " at '" + token.lexeme + "'", message);
-        }
+    private static void printStats(LoxContext context) {
+        if (context.stats().enabled()) System.err.println(context.stats().toJson());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,336 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Embedding API. A context owns everything needed to run scripts: symbol table, Resolver,
+// Interpreter (or VM) with its globals, error reporter and output sink. Contexts share no
+// mutable state, so many of them can run at the same time on different threads. A single
+// context is not thread safe, and keeps its globals from one eval() to the next.
+public final class LoxContext {
+  public enum Status {
+    OK,
+    SYNTAX_ERROR,
+    RUNTIME_ERROR
+  }
+
+  private final OutputSink output;
+  private final Consumer<String> errors;
+  private final ErrorReporter reporter;
+  private final SymbolTable symbols = new SymbolTable();
+  private final Resolver resolver = new Resolver();
+  private Interpreter interpreter;
+  private final VM vm;
+  private final NanBoxVM nanBoxVm;
+  private final RunStats stats = new RunStats();
+
+  // Engine options, all off by default. Set through the methods below, before eval().
+  private boolean useVm = false;
+  private boolean optimize = false;
+  private boolean lazyTokens = false;
+  private boolean stream = false;
+  private boolean snapshot = false;
+  private boolean parallel = false;
+  private boolean jit = false;
+  private boolean closures = false;
+  private boolean nanBoxing = false;
+
+  // Prints to System.out and reports errors to System.err.
+  public LoxContext() {
+    this(OutputSink.of(System.out), System.err::println);
+  }
+
+  // Every error message is passed to errors, already formatted.
+  public LoxContext(OutputSink output, Consumer<String> errors) {
+    this.output = output;
+    this.errors = errors;
+    this.reporter = new ErrorReporter(errors, output);
+    this.interpreter = new Interpreter(output, reporter);
+    this.vm = new VM(output, reporter);
+    this.nanBoxVm = new NanBoxVM(output, reporter);
+  }
+
+  // Runs scripts on the bytecode VM instead of the tree-walking Interpreter. The VM keeps
+  // its own globals, separate from the Interpreter's.
+  public void useVm(boolean enabled) {
+    useVm = enabled;
+  }
+
+  // Runs the VM on NaN-boxed values. Only with useVm.
+  public void nanBoxing(boolean enabled) {
+    nanBoxing = enabled;
+  }
+
+  // Folds constant expressions before resolving.
+  public void optimize(boolean enabled) {
+    optimize = enabled;
+  }
+
+  // Hands tokens to the Parser as they are scanned, instead of scanning the whole source
+  // first. Ignored with parallel.
+  public void lazyTokens(boolean enabled) {
+    lazyTokens = enabled;
+  }
+
+  // Parses and runs one statement at a time, so output starts before the whole script is
+  // parsed. Turns snapshot off.
+  public void stream(boolean enabled) {
+    stream = enabled;
+  }
+
+  // evalFile() saves the parsed tree next to the file and reuses it while the file is
+  // unchanged.
+  public void snapshot(boolean enabled) {
+    snapshot = enabled;
+  }
+
+  // Scans and parses large sources on several threads.
+  public void parallel(boolean enabled) {
+    parallel = enabled;
+  }
+
+  // Compiles scripts to JVM classes when they allow it. For the Interpreter only, and run
+  // by a profiled context these bypass the profiler. A class costs far more to make than
+  // running straight-line code once, so it only pays for big scripts and for a
+  // CompiledScript run many times, which compiles after CompiledScript.JIT_THRESHOLD runs.
+  // Streamed statements are never compiled, and REPL-like use, one eval() per line, should
+  // leave it off.
+  public void jit(boolean enabled) {
+    jit = enabled;
+  }
+
+  // Compiles scripts to a tree of closures, when jit is off or could not compile them. For
+  // the Interpreter only, like jit.
+  public void closures(boolean enabled) {
+    closures = enabled;
+  }
+
+  // Times everything the tree-walking Interpreter runs from now on into profiler. Not for
+  // the VM, jit or closures. Globals defined so far are forgotten. Only the command line
+  // uses it, Profiler is not part of the embedding API.
+  void profile(Profiler profiler) {
+    interpreter = new ProfilingInterpreter(output, reporter, profiler);
+  }
+
+  // With enabled, every eval measures its phases, see stats(). Off by default.
+  public void collectStats(boolean enabled) {
+    stats.enable(enabled);
+  }
+
+  // Measures of the last eval, when collectStats() is on. The same object is reused, and
+  // overwritten, by the next eval.
+  public RunStats stats() {
+    return stats;
+  }
+
+  // Runs a script. Output is flushed before returning.
+  public Status eval(CharSequence source) {
+    reporter.reset();
+    stats.reset();
+    try {
+      if (stream) {
+        runStreaming(source);
+      } else {
+        runBatch(source);
+      }
+    } finally {
+      output.flush();
+    }
+
+    if (reporter.hadError) return Status.SYNTAX_ERROR;
+    if (reporter.hadRuntimeError) return Status.RUNTIME_ERROR;
+    return Status.OK;
+  }
+
+  // Runs a script file. With the snapshot option the parsed tree is saved next to the file
+  // (see AstSnapshot), and loaded instead of parsing again while the file does not change.
+  // Streaming runs never use snapshots, and neither do pipes: they can only be read once,
+  // so there is nothing to hash and no place to keep a snapshot.
+  public Status evalFile(Path path, Charset charset) throws IOException {
+    CharSequence source = MappedSource.open(path, charset);
+    if (!snapshot || stream || !Files.isRegularFile(path)) return eval(source);
+
+    reporter.reset();
+    stats.reset();
+    try {
+      byte[] hash = AstSnapshot.hash(path);
+      Path snapshotPath = AstSnapshot.pathFor(path);
+      // Loading the snapshot counts as parsing.
+      stats.start();
+      List<Stmt> statements = AstSnapshot.read(snapshotPath, hash, charset, symbols);
+      stats.stop(RunStats.Phase.PARSE);
+      if (statements == null) {
+        statements = parse(source);
+        // Stop if there was a syntax error.
+        if (reporter.hadError) return Status.SYNTAX_ERROR;
+        AstSnapshot.write(snapshotPath, hash, charset, statements);
+      }
+      execute(statements, true);
+    } finally {
+      output.flush();
+    }
+
+    return reporter.hadRuntimeError ? Status.RUNTIME_ERROR : Status.OK;
+  }
+
+  // Runs a script compiled beforehand, usually taken from a ScriptCache. It runs with fresh
+  // globals, not the ones left by previous evals. Output is flushed before returning.
+  public Status eval(CompiledScript script) {
+    reporter.reset();
+    stats.reset();
+    try {
+      if (script.hasErrors()) {
+        for (String error : script.errors) report(error);
+        return Status.SYNTAX_ERROR;
+      }
+
+      stats.nodes(script.statements);
+      Environment globals = new Environment();
+      if (useVm) {
+        stats.start();
+        Chunk chunk = script.chunk();
+        stats.stop(RunStats.Phase.COMPILE);
+        if (chunk == null) {
+          for (String error : script.chunkErrors()) report(error);
+          return Status.SYNTAX_ERROR;
+        }
+        stats.start();
+        if (nanBoxing) {
+          NanBoxVM.Globals nanBoxGlobals = new NanBoxVM.Globals();
+          nanBoxVm.interpret(chunk, nanBoxGlobals);
+          stats.stop(RunStats.Phase.INTERPRET);
+          stats.environmentSize(nanBoxGlobals.size());
+          return reporter.hadRuntimeError ? Status.RUNTIME_ERROR : Status.OK;
+        }
+        vm.interpret(chunk, globals);
+      } else {
+        CompiledCode code = jit ? script.jit() : null;
+        if (code == null && closures) code = script.closures();
+        stats.start();
+        if (code != null) {
+          run(code, globals);
+        } else {
+          interpreter.interpret(script.statements, globals);
+        }
+      }
+      stats.stop(RunStats.Phase.INTERPRET);
+      stats.environmentSize(globals.size());
+    } finally {
+      output.flush();
+    }
+
+    return reporter.hadRuntimeError ? Status.RUNTIME_ERROR : Status.OK;
+  }
+
+  private void report(String error) {
+    output.flush();
+    errors.accept(error);
+  }
+
+  private void runBatch(CharSequence source) {
+    List<Stmt> statements = parse(source);
+    // Stop if there was a syntax error.
+    if (reporter.hadError) return;
+
+    execute(statements, true);
+  }
+
+  private List<Stmt> parse(CharSequence source) {
+    List<Stmt> statements;
+    stats.start();
+    if (lazyTokens && !parallel) {
+      // Tokens are scanned while parsing, scanning is timed as part of it.
+      statements = new Parser(new Scanner(source, symbols, reporter), reporter).parse();
+    } else {
+      PackedTokens tokens = parallel ? new ParallelScanner(source, symbols, reporter).scan()
+                                     : new Scanner(source, symbols, reporter).scanPacked();
+      stats.stop(RunStats.Phase.SCAN);
+      // Without the EOF token.
+      stats.tokens(tokens.size() - 1);
+      stats.start();
+      statements = parallel ? new ParallelParser(tokens, reporter).parse()
+                            : new Parser(tokens, reporter).parse();
+    }
+    stats.stop(RunStats.Phase.PARSE);
+    return statements;
+  }
+
+  // Statements run while the rest of the script is still being parsed, and are not kept
+  // once they are done. As a syntax error further down cannot be known in advance, the
+  // statements before it have already run when it is reported. From the first syntax or
+  // runtime error on, nothing else is executed, but the rest of the script is still parsed
+  // to report its syntax errors.
+  private void runStreaming(CharSequence source) {
+    Parser parser = new Parser(new Scanner(source, symbols, reporter), reporter);
+    boolean failed = false;
+    while (parser.hasNextStatement()) {
+      stats.start();
+      Stmt statement = parser.nextStatement();
+      stats.stop(RunStats.Phase.PARSE);
+      if (reporter.hadError || failed) continue;
+
+      // A single statement, run once: not worth a JIT class.
+      failed = !execute(Collections.singletonList(statement), false);
+    }
+  }
+
+  // Returns false when a runtime error stopped the execution. With the jit option and
+  // allowJit, the statements may be compiled to a class first.
+  private boolean execute(List<Stmt> statements, boolean allowJit) {
+    stats.start();
+    if (optimize) statements = new Optimizer().optimize(statements);
+    resolver.resolve(statements);
+    stats.stop(RunStats.Phase.RESOLVE);
+    stats.nodes(statements);
+
+    boolean completed;
+    if (useVm) {
+      stats.start();
+      Chunk chunk = new Compiler(reporter).compile(statements);
+      stats.stop(RunStats.Phase.COMPILE);
+      // Stop if the script does not fit in the bytecode format.
+      if (reporter.hadError) return true;
+      stats.start();
+      if (nanBoxing) {
+        completed = nanBoxVm.interpret(chunk);
+        stats.stop(RunStats.Phase.INTERPRET);
+        stats.environmentSize(nanBoxVm.globals().size());
+      } else {
+        completed = vm.interpret(chunk);
+        stats.stop(RunStats.Phase.INTERPRET);
+        stats.environmentSize(vm.globals().size());
+      }
+    } else {
+      CompiledCode code = null;
+      boolean compile = jit && allowJit;
+      if (compile || closures) {
+        stats.start();
+        if (compile) code = JitCompiler.compile(statements);
+        if (code == null && closures) code = ClosureCompiler.compile(statements);
+        stats.stop(RunStats.Phase.COMPILE);
+      }
+      stats.start();
+      completed = code != null ? run(code, interpreter.globals())
+                               : interpreter.interpret(statements);
+      stats.stop(RunStats.Phase.INTERPRET);
+      stats.environmentSize(interpreter.globals().size());
+    }
+    return completed;
+  }
+
+  // Returns false when a runtime error stopped the execution, like Interpreter.interpret().
+  private boolean run(CompiledCode code, Environment globals) {
+    try {
+      code.run(globals, output);
+      return true;
+    } catch (RuntimeError error) {
+      reporter.runtimeError(error);
+      return false;
+    }
+  }
+}
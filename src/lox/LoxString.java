@@ -0,0 +1,104 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Result of '+' on strings. Instead of copying both operands, a LoxString keeps them as the
+// two halves of a rope, and the characters are only copied once, when the text is needed:
+// printed through stringify(), compared in isEqual() or hashed. So building a long string
+// piece by piece stays linear, not quadratic.
+// Lox string values are either a plain String (literals, short results) or a LoxString.
+final class LoxString implements CharSequence {
+  // Below this length a plain String is cheaper than a rope node.
+  private static final int MIN_ROPE_LENGTH = 64;
+
+  private final int length;
+  // The halves, each a String or a LoxString. Dropped once flattened.
+  private CharSequence left;
+  private CharSequence right;
+  private String flat;
+
+  private LoxString(CharSequence left, CharSequence right, int length) {
+    this.left = left;
+    this.right = right;
+    this.length = length;
+  }
+
+  static boolean isString(Object value) {
+    return value instanceof String || value instanceof LoxString;
+  }
+
+  // Both operands must be Lox strings, see isString(). A rope is cheap to build, so a few
+  // dozen doublings reach lengths no String can hold: those are a runtime error at the
+  // operator, not an overflowed length.
+  static Object concat(Token operator, Object left, Object right) {
+    CharSequence a = (CharSequence) left;
+    CharSequence b = (CharSequence) right;
+    long length = (long) a.length() + b.length();
+    if (length < MIN_ROPE_LENGTH) {
+      return a.toString() + b.toString();
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new RuntimeError(operator, "String is too long.");
+    }
+
+    return new LoxString(a, b, (int) length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    if (flat == null) {
+      flat = flatten();
+      left = null;
+      right = null;
+    }
+    return flat;
+  }
+
+  // Walks the rope with an explicit stack, long chains of '+' make very deep ropes.
+  private String flatten() {
+    StringBuilder builder = new StringBuilder(length);
+    Deque<CharSequence> pending = new ArrayDeque<>();
+    pending.push(this);
+    while (!pending.isEmpty()) {
+      CharSequence piece = pending.pop();
+      if (piece instanceof LoxString && ((LoxString) piece).flat == null) {
+        LoxString rope = (LoxString) piece;
+        pending.push(rope.right);
+        pending.push(rope.left);
+      } else {
+        builder.append(piece.toString());
+      }
+    }
+
+    return builder.toString();
+  }
+
+  // Equal to any Lox string with the same characters, plain or not. See Interpreter.isEqual().
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) return true;
+    if (!isString(other)) return false;
+    return toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
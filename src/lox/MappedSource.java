@@ -0,0 +1,67 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Source code read straight from a memory mapped file, so a big script is not copied into
+// a byte[] and then again into a String before scanning.
+// The Scanner only looks at ASCII characters to find tokens. Bytes are handed to it one by
+// one, and only the ranges that become lexemes or string literals are decoded with the charset.
+// This works for charsets where every ASCII character is a single byte that never appears
+// inside a multi-byte sequence, like UTF-8. For the rest, open() reads the file as a String.
+// So does it for pipes and devices, which cannot be mapped and report a size of 0.
+class MappedSource implements CharSequence {
+  private final ByteBuffer bytes;
+  private final Charset charset;
+
+  private MappedSource(ByteBuffer bytes, Charset charset) {
+    this.bytes = bytes;
+    this.charset = charset;
+  }
+
+  static CharSequence open(Path path, Charset charset) throws IOException {
+    boolean asciiCompatible = charset.equals(StandardCharsets.UTF_8) ||
+                              charset.equals(StandardCharsets.US_ASCII) ||
+                              charset.equals(StandardCharsets.ISO_8859_1);
+    if (asciiCompatible && Files.isRegularFile(path)) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        long size = channel.size();
+        // A mapping cannot be bigger than what an int can index.
+        if (size <= Integer.MAX_VALUE) {
+          // The mapping stays valid after the channel is closed.
+          return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), charset);
+        }
+      }
+    }
+
+    return new String(Files.readAllBytes(path), charset);
+  }
+
+  @Override
+  public int length() {
+    return bytes.limit();
+  }
+
+  // Bytes outside ASCII come out as separate chars. They are only meaningful inside
+  // strings and comments, which the Scanner copies through subSequence().
+  @Override
+  public char charAt(int index) {
+    return (char) (bytes.get(index) & 0xff);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return charset.decode(bytes.slice(start, end - start)).toString();
+  }
+
+  @Override
+  public String toString() {
+    return subSequence(0, length()).toString();
+  }
+}
@@ -0,0 +1,346 @@
+package lox;
+
+import java.util.Arrays;
+
+// Runs the same Chunks as VM, but every value is a NaN-boxed long instead of an Object, so
+// numbers are never boxed and arithmetic allocates nothing. A double is stored as its bits.
+// Any other value hides in the payload of a quiet NaN with one more bit set, a NaN that
+// Double.doubleToLongBits() never gives: nil, true and false are tags in the low bits, and
+// with the sign bit set too, the low bits are an index into the heap, a side table holding
+// the strings. The results of the VM are those of the Interpreter.
+//
+// The heap is compacted when it fills up: the values still reachable from the stack, the
+// globals and the constants are moved down to the start, and those roots are rewritten.
+final class NanBoxVM {
+  private static final long QNAN = 0x7ffc000000000000L;
+  private static final long SIGN = 0x8000000000000000L;
+  private static final long NIL = QNAN | 1;
+  private static final long FALSE = QNAN | 2;
+  private static final long TRUE = QNAN | 3;
+  // Global slot resolved but not defined yet.
+  private static final long UNDEFINED = QNAN | 4;
+  private static final long OBJECT = SIGN | QNAN;
+  private static final long INDEX = 0xffffffffL;
+
+  // Globals of one run. A CompiledScript runs with fresh ones. See interpret().
+  static final class Globals {
+    private long[] values = new long[8];
+    // Slots that are not UNDEFINED, so size() does not scan them.
+    private int defined = 0;
+
+    Globals() {
+      Arrays.fill(values, UNDEFINED);
+    }
+
+    int size() {
+      return defined;
+    }
+  }
+
+  // Outlive a single run, as the REPL compiles every line on its own.
+  private final Globals ownGlobals = new Globals();
+  private Globals globals = ownGlobals;
+  private long[] stack = new long[256];
+  private int stackTop = 0;
+  private Object[] heap = new Object[1024];
+  private int heapCount = 0;
+  // Constants of the last chunk run, kept for the next run of the same chunk.
+  private Chunk lastChunk;
+  private long[] lastConstants;
+  private final OutputSink output;
+  private final ErrorReporter reporter;
+
+  NanBoxVM() {
+    this(OutputSink.of(System.out), new ErrorReporter());
+  }
+
+  NanBoxVM(OutputSink output, ErrorReporter reporter) {
+    this.output = output;
+    this.reporter = reporter;
+  }
+
+  Globals globals() {
+    return ownGlobals;
+  }
+
+  // Returns false when a runtime error stopped the execution.
+  boolean interpret(Chunk chunk) {
+    return interpret(chunk, ownGlobals);
+  }
+
+  // Runs with the given globals instead of the VM's own. See CompiledScript.
+  boolean interpret(Chunk chunk, Globals globals) {
+    this.globals = globals;
+    try {
+      run(chunk);
+      return true;
+    } catch (RuntimeError error) {
+      reporter.runtimeError(error);
+      return false;
+    } finally {
+      // Leave the stack clean for the next REPL line, also after an error.
+      stackTop = 0;
+      this.globals = ownGlobals;
+    }
+  }
+
+  private void run(Chunk chunk) {
+    final byte[] code = chunk.code;
+    final Token[] tokens = chunk.tokens;
+    final long[] constants = constants(chunk);
+    int ip = 0;
+
+    for (;;) {
+      int offset = ip;
+      byte instruction = code[ip++];
+      switch (instruction) {
+        case OpCode.CONSTANT: {
+          int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+          ip += 2;
+          push(constants[index]);
+          break;
+        }
+        case OpCode.CONSTANT_LONG: {
+          int index = ((code[ip] & 0xff) << 24) | ((code[ip + 1] & 0xff) << 16) |
+                      ((code[ip + 2] & 0xff) << 8) | (code[ip + 3] & 0xff);
+          ip += 4;
+          push(constants[index]);
+          break;
+        }
+        case OpCode.NIL: push(NIL); break;
+        case OpCode.TRUE: push(TRUE); break;
+        case OpCode.FALSE: push(FALSE); break;
+        case OpCode.POP: stackTop--; break;
+        case OpCode.GET_VARIABLE: {
+          int depth = code[ip] & 0xff;
+          int slot = ((code[ip + 1] & 0xff) << 8) | (code[ip + 2] & 0xff);
+          ip += 3;
+          // The Resolver only makes globals for now.
+          if (depth != 0) throw new IllegalStateException("Only globals are supported.");
+          long[] values = globals.values;
+          long value = slot < values.length ? values[slot] : UNDEFINED;
+          if (value == UNDEFINED) {
+            Token name = tokens[offset];
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+          }
+          push(value);
+          break;
+        }
+        case OpCode.DEFINE_GLOBAL: {
+          int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+          ip += 2;
+          define(slot, pop());
+          break;
+        }
+        case OpCode.EQUAL: {
+          long right = pop();
+          long left = pop();
+          push(isEqual(left, right) ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.NOT_EQUAL: {
+          long right = pop();
+          long left = pop();
+          push(isEqual(left, right) ? FALSE : TRUE);
+          break;
+        }
+        case OpCode.GREATER: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(asNumber(left) > asNumber(right) ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.GREATER_EQUAL: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(asNumber(left) >= asNumber(right) ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.LESS: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(asNumber(left) < asNumber(right) ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.LESS_EQUAL: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(asNumber(left) <= asNumber(right) ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.ADD: {
+          long right = pop();
+          long left = pop();
+          if (isNumber(left) && isNumber(right)) {
+            push(number(asNumber(left) + asNumber(right)));
+          } else {
+            // Strings, or an error. Interpreter.add() gives the same result and message.
+            push(box(Interpreter.add(tokens[offset], unbox(left), unbox(right))));
+          }
+          break;
+        }
+        case OpCode.SUBTRACT: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(number(asNumber(left) - asNumber(right)));
+          break;
+        }
+        case OpCode.MULTIPLY: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(number(asNumber(left) * asNumber(right)));
+          break;
+        }
+        case OpCode.DIVIDE: {
+          long right = pop();
+          long left = pop();
+          checkNumberOperands(tokens[offset], left, right);
+          push(number(asNumber(left) / asNumber(right)));
+          break;
+        }
+        case OpCode.NOT: {
+          long value = pop();
+          push(value == NIL || value == FALSE ? TRUE : FALSE);
+          break;
+        }
+        case OpCode.NEGATE: {
+          long right = pop();
+          if (!isNumber(right)) {
+            throw new RuntimeError(tokens[offset], "Operand must be a number.");
+          }
+          push(number(-asNumber(right)));
+          break;
+        }
+        case OpCode.PRINT:
+          output.println(Interpreter.stringify(unbox(pop())));
+          break;
+        case OpCode.RETURN:
+          return;
+        default:
+          throw new IllegalStateException("Unknown opcode " + instruction + " at " + offset + ".");
+      }
+    }
+  }
+
+  private static boolean isNumber(long value) {
+    return (value & QNAN) != QNAN;
+  }
+
+  private static boolean isObject(long value) {
+    return (value & OBJECT) == OBJECT;
+  }
+
+  // doubleToLongBits() turns every NaN into the same one, so comparing the bits of two
+  // numbers is Double.equals(): NaN equals NaN, and 0 differs from -0.
+  private static long number(double value) {
+    return Double.doubleToLongBits(value);
+  }
+
+  private static double asNumber(long value) {
+    return Double.longBitsToDouble(value);
+  }
+
+  private static void checkNumberOperands(Token operator, long left, long right) {
+    if (isNumber(left) && isNumber(right)) return;
+    throw new RuntimeError(operator, "Operands must be numbers");
+  }
+
+  private boolean isEqual(long left, long right) {
+    if (left == right) return true;
+    if (isObject(left) && isObject(right)) return Interpreter.isEqual(unbox(left), unbox(right));
+    return false;
+  }
+
+  // Object form of a value, the one the Interpreter would hold.
+  private Object unbox(long value) {
+    if (isNumber(value)) return asNumber(value);
+    if (value == NIL) return null;
+    if (value == TRUE) return true;
+    if (value == FALSE) return false;
+    return heap[(int) (value & INDEX)];
+  }
+
+  private long box(Object value) {
+    if (value instanceof Double) return number((double) value);
+    if (value == null) return NIL;
+    if (value instanceof Boolean) return (boolean) value ? TRUE : FALSE;
+
+    if (heapCount == heap.length) collect();
+    heap[heapCount] = value;
+    return OBJECT | heapCount++;
+  }
+
+  private long[] constants(Chunk chunk) {
+    if (chunk == lastChunk) return lastConstants;
+
+    // Set before boxing: a collection while boxing must see, and update, the ones done.
+    lastChunk = chunk;
+    lastConstants = new long[chunk.constantCount()];
+    Arrays.fill(lastConstants, NIL);
+    for (int i = 0; i < lastConstants.length; i++) {
+      lastConstants[i] = box(chunk.constant(i));
+    }
+    return lastConstants;
+  }
+
+  private void define(int slot, long value) {
+    long[] values = globals.values;
+    if (slot >= values.length) {
+      // Globals keep growing while the REPL resolves new lines.
+      int oldLength = values.length;
+      values = Arrays.copyOf(values, Math.max(slot + 1, oldLength * 2));
+      Arrays.fill(values, oldLength, values.length, UNDEFINED);
+      globals.values = values;
+    }
+    if (values[slot] == UNDEFINED) globals.defined++;
+    values[slot] = value;
+  }
+
+  private void push(long value) {
+    if (stackTop == stack.length) {
+      stack = Arrays.copyOf(stack, stackTop * 2);
+    }
+    stack[stackTop++] = value;
+  }
+
+  private long pop() {
+    return stack[--stackTop];
+  }
+
+  // Moves the reachable heap values to the start of a new table, in the order they are
+  // found, and grows it when more than half of it is still in use.
+  private void collect() {
+    int[] moved = new int[heapCount];
+    Arrays.fill(moved, -1);
+    Object[] live = new Object[heap.length];
+    int liveCount = 0;
+    // Every root only once, or its values would be moved twice.
+    long[] runGlobals = globals != ownGlobals ? globals.values : null;
+    long[][] roots = {stack, ownGlobals.values, runGlobals, lastConstants};
+    for (long[] root : roots) {
+      if (root == null) continue;
+      int length = root == stack ? stackTop : root.length;
+      for (int i = 0; i < length; i++) {
+        long value = root[i];
+        if (!isObject(value)) continue;
+
+        int index = (int) (value & INDEX);
+        if (moved[index] < 0) {
+          moved[index] = liveCount;
+          live[liveCount++] = heap[index];
+        }
+        root[i] = OBJECT | moved[index];
+      }
+    }
+
+    if (liveCount > live.length / 2) live = Arrays.copyOf(live, live.length * 2);
+    heap = live;
+    heapCount = liveCount;
+  }
+}
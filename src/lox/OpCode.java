@@ -0,0 +1,30 @@
+package lox;
+
+// Instruction set of the bytecode VM. Operands follow the opcode byte in the chunk,
+// two byte operands are stored big endian.
+final class OpCode {
+  static final byte CONSTANT      = 0;  // u16 constant index
+  static final byte NIL           = 1;
+  static final byte TRUE          = 2;
+  static final byte FALSE         = 3;
+  static final byte POP           = 4;
+  static final byte GET_VARIABLE  = 5;  // u8 depth, u16 slot
+  static final byte DEFINE_GLOBAL = 6;  // u16 slot
+  static final byte EQUAL         = 7;
+  static final byte NOT_EQUAL     = 8;
+  static final byte GREATER       = 9;
+  static final byte GREATER_EQUAL = 10;
+  static final byte LESS          = 11;
+  static final byte LESS_EQUAL    = 12;
+  static final byte ADD           = 13;
+  static final byte SUBTRACT      = 14;
+  static final byte MULTIPLY      = 15;
+  static final byte DIVIDE        = 16;
+  static final byte NOT           = 17;
+  static final byte NEGATE        = 18;
+  static final byte PRINT         = 19;
+  static final byte RETURN        = 20;
+  static final byte CONSTANT_LONG = 21; // u32 constant index, once u16 runs out
+
+  private OpCode() {}
+}
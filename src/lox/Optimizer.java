@@ -0,0 +1,160 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Optional pass over the Parser output, run before the Resolver. It rebuilds the tree:
+//  - Binary and Unary expressions whose operands are literals are folded into a Literal.
+//  - Grouping wrappers are dropped, the tree shape already keeps the precedence.
+//  - '!!x' is simplified where only the truthiness of the value matters.
+// Expressions that would fail at run time, like -"a" or 1 + "b", are left alone, so the
+// RuntimeError is still raised when (and where) the statement runs.
+class Optimizer implements Expression.Visitor<Expression>, Stmt.Visitor<Stmt> {
+  // Result of fold() when the operation cannot be done at compile time.
+  private static final Object NOT_CONSTANT = new Object();
+
+  List<Stmt> optimize(List<Stmt> statements) {
+    List<Stmt> optimized = new ArrayList<>(statements.size());
+    for (Stmt statement : statements) {
+      optimized.add(statement.accept(this));
+    }
+
+    return optimized;
+  }
+
+  private Expression optimize(Expression expr) {
+    return expr.accept(this);
+  }
+
+  @Override
+  public Stmt visitExprStmt(Stmt.Expr stmt) {
+    return new Stmt.Expr(optimize(stmt.expression));
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    return new Stmt.Print(optimize(stmt.expression));
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expression initializer = stmt.initializer == null ? null : optimize(stmt.initializer);
+    return new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Expression visitBinaryExpression(Expression.Binary expr) {
+    Expression left = optimize(expr.left);
+    Expression right = optimize(expr.right);
+
+    if (left instanceof Expression.Literal && right instanceof Expression.Literal) {
+      Object value = fold(expr.operator.type,
+          ((Expression.Literal) left).value, ((Expression.Literal) right).value);
+      if (value != NOT_CONSTANT) return new Expression.Literal(value);
+    }
+
+    return new Expression.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expression visitGroupingExpression(Expression.Grouping expr) {
+    return optimize(expr.expression);
+  }
+
+  @Override
+  public Expression visitLiteralExpression(Expression.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expression visitVariableExpression(Expression.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expression visitUnaryExpression(Expression.Unary expr) {
+    Expression right = optimize(expr.right);
+
+    if (expr.operator.type == TokenType.BANG) {
+      // The operand of '!' is a boolean context, '!!x' there is the same as 'x'.
+      while (isDoubleNegation(right)) {
+        right = ((Expression.Unary) ((Expression.Unary) right).right).right;
+      }
+    }
+
+    if (right instanceof Expression.Literal) {
+      Object value = ((Expression.Literal) right).value;
+      switch (expr.operator.type) {
+        case MINUS:
+          if (value instanceof Double) return new Expression.Literal(-(double)value);
+          break;
+        case BANG:
+          return new Expression.Literal(!Interpreter.isTruthy(value));
+      }
+    }
+
+    Expression.Unary unary = new Expression.Unary(expr.operator, right);
+    // Out of a boolean context '!!x' is only the same as 'x' when x is already a boolean.
+    if (isDoubleNegation(unary)) {
+      Expression operand = ((Expression.Unary) right).right;
+      if (isBoolean(operand)) return operand;
+    }
+
+    return unary;
+  }
+
+  private static boolean isDoubleNegation(Expression expr) {
+    return expr instanceof Expression.Unary &&
+           ((Expression.Unary) expr).operator.type == TokenType.BANG &&
+           ((Expression.Unary) expr).right instanceof Expression.Unary &&
+           ((Expression.Unary) ((Expression.Unary) expr).right).operator.type == TokenType.BANG;
+  }
+
+  // True when expr always evaluates to a Boolean, or fails at run time.
+  private static boolean isBoolean(Expression expr) {
+    if (expr instanceof Expression.Literal) {
+      return ((Expression.Literal) expr).value instanceof Boolean;
+    }
+    if (expr instanceof Expression.Unary) {
+      return ((Expression.Unary) expr).operator.type == TokenType.BANG;
+    }
+    if (expr instanceof Expression.Binary) {
+      switch (((Expression.Binary) expr).operator.type) {
+        case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+        case BANG_EQUAL: case EQUAL_EQUAL:
+          return true;
+      }
+    }
+    return false;
+  }
+
+  // Computes a binary operation on two literal values, with the same rules as the Interpreter.
+  private static Object fold(TokenType operator, Object left, Object right) {
+    switch (operator) {
+      case BANG_EQUAL: return !Interpreter.isEqual(left, right);
+      case EQUAL_EQUAL: return Interpreter.isEqual(left, right);
+      case PLUS:
+        if (left instanceof String && right instanceof String) {
+          return (String)left + (String)right;
+        }
+        break;
+    }
+
+    if (!(left instanceof Double && right instanceof Double)) return NOT_CONSTANT;
+    double a = (double)left;
+    double b = (double)right;
+
+    switch (operator) {
+      case GREATER: return a > b;
+      case GREATER_EQUAL: return a >= b;
+      case LESS: return a < b;
+      case LESS_EQUAL: return a <= b;
+      case MINUS: return a - b;
+      case PLUS: return a + b;
+      case SLASH: return a / b;
+      case STAR: return a * b;
+    }
+
+    return NOT_CONSTANT;
+  }
+}
@@ -0,0 +1,34 @@
+package lox;
+
+import java.io.PrintStream;
+
+// Where print statements write to. The Interpreter and the VM print through one of these,
+// so the embedder decides how output is buffered and where it goes.
+public interface OutputSink extends AutoCloseable {
+  void println(String text);
+
+  // Writes out anything buffered.
+  void flush();
+
+  // Flushes and releases whatever the sink writes to. The default only flushes.
+  @Override
+  default void close() {
+    flush();
+  }
+
+  // Writes straight through a PrintStream, like System.out. Nothing is held back, and
+  // closing the sink leaves the stream open.
+  static OutputSink of(PrintStream stream) {
+    return new OutputSink() {
+      @Override
+      public void println(String text) {
+        stream.println(text);
+      }
+
+      @Override
+      public void flush() {
+        stream.flush();
+      }
+    };
+  }
+}
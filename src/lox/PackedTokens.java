@@ -0,0 +1,90 @@
+package lox;
+
+import java.util.Arrays;
+
+// Token list stored as parallel primitive arrays instead of one Token object per token.
+// Only positions into the source are kept. Lexemes, literals and Token objects are built
+// on demand, when the Parser puts a token in the tree or reports an error at it.
+class PackedTokens {
+  private static final TokenType[] TYPES = TokenType.values();
+
+  private final CharSequence source;
+  private final SymbolTable symbols;
+  private byte[] types = new byte[256];
+  private int[] starts = new int[256];
+  private int[] lengths = new int[256];
+  private int[] lines = new int[256];
+  private int count = 0;
+
+  PackedTokens(CharSequence source, SymbolTable symbols) {
+    this.source = source;
+    this.symbols = symbols;
+  }
+
+  void add(TokenType type, int start, int length, int line) {
+    if (count == types.length) grow(count + 1);
+    types[count] = (byte) type.ordinal();
+    starts[count] = start;
+    lengths[count] = length;
+    lines[count] = line;
+    count++;
+  }
+
+  // Appends all the tokens of other, with their lines moved down by lineOffset.
+  void append(PackedTokens other, int lineOffset) {
+    int total = count + other.count;
+    if (total > types.length) grow(total);
+    System.arraycopy(other.types, 0, types, count, other.count);
+    System.arraycopy(other.starts, 0, starts, count, other.count);
+    System.arraycopy(other.lengths, 0, lengths, count, other.count);
+    for (int i = 0; i < other.count; i++) {
+      lines[count + i] = other.lines[i] + lineOffset;
+    }
+    count = total;
+  }
+
+  private void grow(int needed) {
+    int capacity = Math.max(needed, types.length * 2);
+    types = Arrays.copyOf(types, capacity);
+    starts = Arrays.copyOf(starts, capacity);
+    lengths = Arrays.copyOf(lengths, capacity);
+    lines = Arrays.copyOf(lines, capacity);
+  }
+
+  int size() {
+    return count;
+  }
+
+  TokenType type(int index) {
+    return TYPES[types[index]];
+  }
+
+  int line(int index) {
+    return lines[index];
+  }
+
+  String lexeme(int index) {
+    return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+  }
+
+  // Same value the Scanner gives Token.literal.
+  Object literal(int index) {
+    int start = starts[index];
+    int end = start + lengths[index];
+    switch (type(index)) {
+      case NUMBER: return Scanner.parseNumber(source, start, end);
+      // Trim the surrounding quotes.
+      case STRING: return source.subSequence(start + 1, end - 1).toString();
+      default: return null;
+    }
+  }
+
+  Token token(int index) {
+    if (type(index) == TokenType.IDENTIFIER) {
+      Symbol symbol = symbols.intern(source, starts[index], starts[index] + lengths[index]);
+      return new Token(TokenType.IDENTIFIER, symbol.name, null, line(index), symbol);
+    }
+
+    return new Token(type(index), lexeme(index), literal(index), line(index));
+  }
+}
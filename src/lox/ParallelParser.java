@@ -0,0 +1,83 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Parses a big token list on several cores. Top-level declarations do not depend on each
+// other, so the tokens are cut into ranges of declarations, parsed at the same time by
+// Parsers of their own, and the statements put back together in order.
+// A range starts right after a ';'. That is always where a declaration starts: an expression
+// cannot contain a ';', so a declaration either ends with the first ';' after its start, or
+// fails on a token no further than that ';', and then Parser.synchronize() stops at the
+// latest right after it. So the ranges give the same statements as one Parser for the whole
+// list, also around syntax errors. Each range keeps its errors, and they are reported range
+// after range, in source order.
+final class ParallelParser {
+  // Below this many tokens per range, splitting the work costs more than it saves.
+  static final int MIN_TOKENS = 1 << 16;
+
+  private final PackedTokens tokens;
+  private final ErrorReporter reporter;
+  private final ForkJoinPool pool;
+  private final int minTokens;
+
+  ParallelParser(PackedTokens tokens, ErrorReporter reporter) {
+    this(tokens, reporter, ForkJoinPool.commonPool(), MIN_TOKENS);
+  }
+
+  ParallelParser(PackedTokens tokens, ErrorReporter reporter, ForkJoinPool pool, int minTokens) {
+    this.tokens = tokens;
+    this.reporter = reporter;
+    this.pool = pool;
+    this.minTokens = minTokens;
+  }
+
+  List<Stmt> parse() {
+    int size = tokens.size();
+    if (size < 2 * minTokens || pool.getParallelism() < 2) {
+      return new Parser(tokens, reporter).parse();
+    }
+
+    // A few ranges per thread, so a slow range does not keep the others waiting.
+    int[] bounds = split(Math.max(minTokens, size / (pool.getParallelism() * 4)));
+    int ranges = bounds.length - 1;
+    List<ForkJoinTask<List<Stmt>>> tasks = new ArrayList<>(ranges);
+    List<List<String>> errors = new ArrayList<>(ranges);
+    for (int i = 0; i < ranges; i++) {
+      List<String> rangeErrors = new ArrayList<>();
+      errors.add(rangeErrors);
+      Parser parser = new Parser(tokens, bounds[i], bounds[i + 1],
+                                 new ErrorReporter(rangeErrors::add, null));
+      tasks.add(pool.submit(parser::parse));
+    }
+
+    List<Stmt> statements = new ArrayList<>();
+    for (int i = 0; i < ranges; i++) {
+      statements.addAll(tasks.get(i).join());
+      for (String error : errors.get(i)) reporter.error(error);
+    }
+
+    return statements;
+  }
+
+  // Range starts, each right after a ';', with the token count at the end.
+  private int[] split(int rangeSize) {
+    int size = tokens.size();
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    int position = rangeSize;
+    while (position < size) {
+      while (position < size && tokens.type(position - 1) != TokenType.SEMICOLON) position++;
+      if (position >= size) break;
+      starts.add(position);
+      position += rangeSize;
+    }
+
+    int[] bounds = new int[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) bounds[i] = starts.get(i);
+    bounds[starts.size()] = size;
+    return bounds;
+  }
+}
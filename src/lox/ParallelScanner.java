@@ -0,0 +1,110 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Scans a big source on several cores. The source is cut into chunks that start right after
+// a newline, and each chunk is scanned on its own, guessing that it does not start inside a
+// string. Comments and all other tokens stop before a newline, so a string is the only thing
+// that can go on from one chunk into the next.
+// The chunks are then stitched in order. Chunks count lines from 1, and stitching moves their
+// tokens and errors down by the lines before them, so everything gets the line Scanner alone
+// would give it. When a chunk ends inside a string the guess is wrong for what follows, so
+// the source is scanned again from that string on, on this thread, until it reaches the start
+// of a chunk between two tokens. From there the results of the chunks are good again.
+final class ParallelScanner {
+  // Below this, splitting the work costs more than it saves.
+  static final int MIN_CHUNK = 1 << 20;
+
+  private final CharSequence source;
+  private final SymbolTable symbols;
+  private final ErrorReporter reporter;
+  private final ForkJoinPool pool;
+  private final int minChunk;
+
+  ParallelScanner(CharSequence source, SymbolTable symbols, ErrorReporter reporter) {
+    this(source, symbols, reporter, ForkJoinPool.commonPool(), MIN_CHUNK);
+  }
+
+  ParallelScanner(CharSequence source, SymbolTable symbols, ErrorReporter reporter,
+                  ForkJoinPool pool, int minChunk) {
+    this.source = source;
+    this.symbols = symbols;
+    this.reporter = reporter;
+    this.pool = pool;
+    this.minChunk = minChunk;
+  }
+
+  // Same tokens, lines and errors as Scanner.scanPacked(), errors in source order.
+  PackedTokens scan() {
+    int length = source.length();
+    if (length < 2 * minChunk || pool.getParallelism() < 2) {
+      return new Scanner(source, symbols, reporter).scanPacked();
+    }
+
+    // A few chunks per thread, so a slow chunk does not keep the others waiting.
+    int[] bounds = split(Math.max(minChunk, length / (pool.getParallelism() * 4)));
+    int chunks = bounds.length - 1;
+    List<ForkJoinTask<Scanner>> tasks = new ArrayList<>(chunks);
+    PackedTokens[] scanned = new PackedTokens[chunks];
+    for (int i = 0; i < chunks; i++) {
+      int index = i;
+      Scanner scanner = new Scanner(source, bounds[i], bounds[i + 1], symbols);
+      tasks.add(pool.submit(() -> {
+        scanned[index] = scanner.scanChunk();
+        return scanner;
+      }));
+    }
+
+    PackedTokens tokens = new PackedTokens(source, symbols);
+    int line = 1;
+    int chunk = 0;
+    while (chunk < chunks) {
+      Scanner scanner = tasks.get(chunk).join();
+      tokens.append(scanned[chunk], line - 1);
+      scanner.reportErrors(reporter, line - 1);
+      chunk++;
+      if (scanner.unfinishedString() < 0) {
+        line += scanner.line() - 1;
+        continue;
+      }
+
+      // Scan again from the string, up to the first chunk that starts between two tokens.
+      Scanner rescan = new Scanner(source, symbols, reporter);
+      int position = rescan.scanFrom(tokens, scanner.unfinishedString(),
+                                     line - 1 + scanner.unfinishedLine(), bounds[chunk]);
+      while (chunk < chunks && position != bounds[chunk]) {
+        while (chunk < chunks && bounds[chunk] < position) {
+          tasks.get(chunk).cancel(false);
+          chunk++;
+        }
+        position = rescan.scanTo(bounds[chunk]);
+      }
+      line = rescan.line();
+    }
+
+    tokens.add(TokenType.EOF, length, 0, line);
+    return tokens;
+  }
+
+  // Chunk starts, each right after a newline, with the source length at the end.
+  private int[] split(int chunkSize) {
+    int length = source.length();
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    int position = chunkSize;
+    while (position < length) {
+      while (position < length && source.charAt(position - 1) != '\n') position++;
+      if (position >= length) break;
+      starts.add(position);
+      position += chunkSize;
+    }
+
+    int[] bounds = new int[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) bounds[i] = starts.get(i);
+    bounds[starts.size()] = length;
+    return bounds;
+  }
+}
@@ -3,15 +3,55 @@ package lox;
 import java.util.List;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
 import static lox.TokenType.*;
 
 public class Parser {
-  private final List<Token> tokens;
-  private int current = 0;
+  // Tokens are pulled on demand. The grammar only needs one token of lookahead, so the
+  // Parser keeps just the current token and the previous one, not the whole list.
+  private final Iterator<Token> tokens;
+  private Token current;
+  private Token previous;
+  // Used instead of the fields above when parsing PackedTokens. The Parser then walks the
+  // arrays by index and only builds a Token when it goes into the tree or into an error.
+  private final PackedTokens packed;
+  private int index = 0;
+  // Parsing stops here, before the EOF token when parsing a part of the tokens.
+  private final int end;
+  private final ErrorReporter reporter;
 
   private static class ParseError extends RuntimeException {}
   Parser (List<Token> tokens) {
+    this(tokens.iterator(), new ErrorReporter());
+  }
+
+  // Streaming mode: usually the Scanner itself, scanning while the Parser goes.
+  Parser (Iterator<Token> tokens, ErrorReporter reporter) {
     this.tokens = tokens;
+    this.current = tokens.next();
+    this.packed = null;
+    this.end = Integer.MAX_VALUE;
+    this.reporter = reporter;
+  }
+
+  Parser (PackedTokens packed) {
+    this(packed, new ErrorReporter());
+  }
+
+  Parser (PackedTokens packed, ErrorReporter reporter) {
+    this(packed, 0, packed.size(), reporter);
+  }
+
+  // Parses the tokens in [from, to) only. For ParallelParser, which makes sure that a
+  // declaration starts at from and another one at to.
+  Parser (PackedTokens packed, int from, int to, ErrorReporter reporter) {
+    this.tokens = null;
+    this.packed = packed;
+    this.index = from;
+    this.end = to;
+    this.reporter = reporter;
   }
 
   List<Stmt> parse() {
@@ -23,10 +63,20 @@ public class Parser {
     return statements;
   }
 
+  // Streaming alternative to parse(), for running each top-level statement as soon as it
+  // is parsed. Like in parse(), a statement with a syntax error comes back as null.
+  boolean hasNextStatement() {
+    return !isAtEnd();
+  }
+
+  Stmt nextStatement() {
+    return declaration();
+  }
+
   // Main functions representing each level of the grammar of the language.
 
   private Expression expression() {
-    return equality();
+    return binary(EQUALITY);
   }
 
   // Method for declaring a variable.
@@ -55,7 +105,8 @@ public class Parser {
 
   // Parsing a variable declaration when encountered one.
   private Stmt varDeclaration() {
-    Token name = consume(IDENTIFIER, "Expect variable name.");
+    consume(IDENTIFIER, "Expect variable name.");
+    Token name = previous();
     Expression initializer = null;
     if (match(EQUAL)) {
       initializer = expression();
@@ -71,55 +122,54 @@ public class Parser {
     return new Stmt.Expr(expr);
   }
 
-  private Expression equality () {
-    Expression expr = comparison();
-    while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-      Token operator = previous();
-      Expression right = comparison();
-      expr = new Expression.Binary(expr, operator, right);
+  // Binary operators are parsed by precedence climbing (a Pratt parser) instead of one method
+  // per level: a literal no longer goes through five calls before reaching primary(), and
+  // the operator of each level is found with one table lookup. Operators of the same level
+  // associate to the left, like the loops of the recursive descent did, so the trees are
+  // the same. Higher binds tighter, 0 is not a binary operator.
+  private static final int EQUALITY = 1;    // != ==
+  private static final int COMPARISON = 2;  // > >= < <=
+  private static final int TERM = 3;        // - +
+  private static final int FACTOR = 4;      // / *
+
+  private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+  static {
+    Map<TokenType, Integer> precedence = new EnumMap<>(TokenType.class);
+    precedence.put(BANG_EQUAL, EQUALITY);
+    precedence.put(EQUAL_EQUAL, EQUALITY);
+    precedence.put(GREATER, COMPARISON);
+    precedence.put(GREATER_EQUAL, COMPARISON);
+    precedence.put(LESS, COMPARISON);
+    precedence.put(LESS_EQUAL, COMPARISON);
+    precedence.put(MINUS, TERM);
+    precedence.put(PLUS, TERM);
+    precedence.put(SLASH, FACTOR);
+    precedence.put(STAR, FACTOR);
+    // Indexed by ordinal, so the lookup is an array access.
+    for (Map.Entry<TokenType, Integer> entry : precedence.entrySet()) {
+      PRECEDENCE[entry.getKey().ordinal()] = entry.getValue();
     }
-
-    return expr;
-  }
-
-  private Expression comparison() {
-    Expression expr = term();
-
-    while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-      Token operator = previous();
-      Expression right = term();
-      expr = new Expression.Binary(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  private Expression term() {
-    Expression expr = factor();
-
-    while (match(MINUS, PLUS)) {
-      Token operator = previous();
-      Expression right = factor();
-      expr = new Expression.Binary(expr, operator, right);
-    }
-
-    return expr;
   }
 
-  private Expression factor() {
+  // Parses an expression whose binary operators bind at least as tight as minPrecedence.
+  private Expression binary(int minPrecedence) {
     Expression expr = unary();
 
-    while (match(SLASH, STAR)) {
+    for (;;) {
+      int precedence = isAtEnd() ? 0 : PRECEDENCE[peekType().ordinal()];
+      if (precedence == 0 || precedence < minPrecedence) return expr;
+
+      advance();
       Token operator = previous();
-      Expression right = unary();
+      // The right operand only takes tighter operators, so equal ones stay on the left.
+      Expression right = binary(precedence + 1);
       expr = new Expression.Binary(expr, operator, right);
     }
-
-    return expr;
   }
 
   private Expression unary() {
-    if (match(BANG, MINUS)) {
+    if (match(BANG) || match(MINUS)) {
       Token operator = previous();
       Expression right = unary();
       return new Expression.Unary(operator, right);
@@ -129,42 +179,52 @@ public class Parser {
   }
 
   private Expression primary() {
-    if (match(FALSE)) return new Expression.Literal(false);
-    if (match(TRUE)) return new Expression.Literal(true);
-    if (match(NIL)) return new Expression.Literal(null);
-
-    if (match(NUMBER, STRING)) {
-      return new Expression.Literal(previous().literal);
-    }
-
-    if (match(IDENTIFIER)) {
-      return new Expression.Variable(previous());
-    }
-
-    if (match(LEFT_PAREN)) {
-      Expression expr = expression();
-      consume(RIGHT_PAREN, "Expect ')' after expression.");
-      return new Expression.Grouping(expr);
+    // At the end nothing matches, as with check().
+    switch (isAtEnd() ? EOF : peekType()) {
+      case FALSE:
+        advance();
+        return new Expression.Literal(false);
+      case TRUE:
+        advance();
+        return new Expression.Literal(true);
+      case NIL:
+        advance();
+        return new Expression.Literal(null);
+      case NUMBER:
+      case STRING:
+        advance();
+        return new Expression.Literal(previousLiteral());
+      case IDENTIFIER:
+        advance();
+        return new Expression.Variable(previous());
+      case LEFT_PAREN: {
+        advance();
+        Expression expr = expression();
+        consume(RIGHT_PAREN, "Expect ')' after expression.");
+        return new Expression.Grouping(expr);
+      }
+      default:
+        throw error(peek(), "Expect expression.");
     }
-
-    throw error(peek(), "Expect expression.");
   }
 
   // Auxiliary functions needed for main parser steps
 
-  private boolean match (TokenType... types) {
-    for (TokenType type : types) {
-      if (check(type)) {
-        advance();
-        return true;
-      }
+  // One type per call. A varargs version would allocate an array on every call.
+  private boolean match (TokenType type) {
+    if (check(type)) {
+      advance();
+      return true;
     }
 
     return false;
   }
 
-  private Token consume(TokenType type, String message) {
-    if (check(type)) return advance();
+  private void consume(TokenType type, String message) {
+    if (check(type)) {
+      advance();
+      return;
+    }
 
     throw error(peek(), message);
   }
@@ -172,41 +232,59 @@ public class Parser {
 
   private boolean check (TokenType type) {
     if (isAtEnd()) return false;
-    return peek().type == type;
+    return peekType() == type;
   }
 
-  private Token advance() {
-    if (!isAtEnd()) current++;
-    return previous();
+  private void advance() {
+    if (isAtEnd()) return;
+    if (packed != null) {
+      index++;
+    } else {
+      previous = current;
+      current = tokens.next();
+    }
   }
 
   private boolean isAtEnd () {
-    return peek().type == EOF;
+    if (index >= end) return true;
+    return peekType() == EOF;
+  }
+
+  private TokenType peekType() {
+    return packed != null ? packed.type(index) : current.type;
+  }
+
+  private TokenType previousType() {
+    return packed != null ? packed.type(index - 1) : previous.type;
   }
 
   private Token peek() {
-    return tokens.get(current);
+    return packed != null ? packed.token(index) : current;
   }
 
   private Token previous() {
-    return tokens.get(current - 1);
+    return packed != null ? packed.token(index - 1) : previous;
+  }
+
+  private Object previousLiteral() {
+    return packed != null ? packed.literal(index - 1) : previous.literal;
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message); // Calls static method error associated to the class, not the object.
+    reporter.error(token, message);
     return new ParseError();
   }
 
   private void synchronize() {
     advance();
     while(!isAtEnd()) {
-      if (previous().type == SEMICOLON) return;
+      if (previousType() == SEMICOLON) return;
 
       // We look to statement boundaries, in order to find the next one and discard everything
       // from the error until the next statement. The idea is to be able to parse with some
       // corretness the rest of the file after the error, without cascading them.
       // Discards every token until it finds one that usually is the start of a new statement.
-      switch (peek().type) {
+      switch (peekType()) {
         case CLASS: case FOR: case FUN: case IF: case PRINT: case RETURN:
         case VAR: case WHILE:
           return;
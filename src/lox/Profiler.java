@@ -0,0 +1,195 @@
+package lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Execution counts and times of a profiled run, filled in by ProfilingInterpreter.
+// Every node run gets a frame in a tree of frames shaped like the nesting of the nodes, so
+// counts and times are exact, not sampled. A frame knows its total time, children included,
+// and its self time is the total minus the time spent in its children. The tree is what a
+// flame graph shows, see writeCollapsed().
+final class Profiler {
+  // One node at one place of the tree. Lines come from the node's first token, or from
+  // the parent for nodes without tokens, like literals. A statement made only of literals
+  // has no line at all, shown as '?'.
+  private static final class Frame {
+    final String label;
+    final String kind;
+    final int line;
+    final Frame parent;
+    final Map<Object, Frame> children = new IdentityHashMap<>();
+    long count = 0;
+    long totalNanos = 0;
+    long childNanos = 0;
+
+    Frame(String label, String kind, int line, Frame parent) {
+      this.label = label;
+      this.kind = kind;
+      this.line = line;
+      this.parent = parent;
+    }
+
+    long selfNanos() {
+      return totalNanos - childNanos;
+    }
+  }
+
+  // Totals of one line or one kind of node.
+  private static final class Counter {
+    final String name;
+    long count = 0;
+    long selfNanos = 0;
+
+    Counter(String name) {
+      this.name = name;
+    }
+  }
+
+  private final Frame root = new Frame("script", "script", -1, null);
+  private Frame current = root;
+
+  void enter(Object node) {
+    Frame frame = current.children.get(node);
+    if (frame == null) {
+      String kind = kind(node);
+      int line = line(node);
+      if (line < 0) line = current.line;
+      frame = new Frame(kind + " (line " + lineName(line) + ")", kind, line, current);
+      current.children.put(node, frame);
+    }
+    frame.count++;
+    current = frame;
+  }
+
+  // Leaves the frame of the last enter(), which took nanos.
+  void exit(long nanos) {
+    current.totalNanos += nanos;
+    current = current.parent;
+    current.childNanos += nanos;
+  }
+
+  // Prints the lines and node kinds where the time went, sorted by self time (the time
+  // not spent in child nodes), with how often each ran. The sums are made here, nothing
+  // of the report is allocated while the script runs.
+  void report(PrintStream out, int top) {
+    Map<Integer, Counter> lines = new HashMap<>();
+    Map<String, Counter> kinds = new HashMap<>();
+    long[] totals = new long[2];
+    forEachFrame(root, frame -> {
+      Counter line = lines.computeIfAbsent(frame.line, key -> new Counter("line " + lineName(key)));
+      Counter kind = kinds.computeIfAbsent(frame.kind, Counter::new);
+      line.count += frame.count;
+      line.selfNanos += frame.selfNanos();
+      kind.count += frame.count;
+      kind.selfNanos += frame.selfNanos();
+      totals[0] += frame.count;
+    });
+    totals[1] = root.childNanos;
+
+    out.printf("Profile: %d nodes run in %.3f ms%n", totals[0], totals[1] / 1e6);
+    print(out, "Hot lines", lines.values(), top, totals[1]);
+    print(out, "Hot nodes", kinds.values(), top, totals[1]);
+  }
+
+  // One line per frame with self time, in the collapsed stack format of flamegraph.pl
+  // and speedscope: the labels from the root down separated by ';', then nanoseconds.
+  void writeCollapsed(Path path) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      IOException[] failure = new IOException[1];
+      forEachFrame(root, frame -> {
+        if (failure[0] != null || frame.selfNanos() <= 0) return;
+        try {
+          writer.write(stack(frame));
+          writer.write(' ');
+          writer.write(Long.toString(frame.selfNanos()));
+          writer.newLine();
+        } catch (IOException error) {
+          failure[0] = error;
+        }
+      });
+      if (failure[0] != null) throw failure[0];
+    }
+  }
+
+  private static void print(PrintStream out, String title, Iterable<Counter> counters,
+                            int top, long totalNanos) {
+    List<Counter> sorted = new ArrayList<>();
+    counters.forEach(sorted::add);
+    sorted.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+
+    out.println(title + ":");
+    out.printf("  %-24s %12s %12s %7s%n", "", "count", "self ms", "self %");
+    for (int i = 0; i < Math.min(top, sorted.size()); i++) {
+      Counter counter = sorted.get(i);
+      out.printf("  %-24s %12d %12.3f %6.1f%%%n", counter.name, counter.count,
+                 counter.selfNanos / 1e6,
+                 totalNanos == 0 ? 0.0 : 100.0 * counter.selfNanos / totalNanos);
+    }
+  }
+
+  private static String lineName(int line) {
+    return line < 0 ? "?" : Integer.toString(line);
+  }
+
+  private static String stack(Frame frame) {
+    if (frame.parent == null) return frame.label;
+    return stack(frame.parent) + ";" + frame.label;
+  }
+
+  // Frames below the root, parents first.
+  private static void forEachFrame(Frame root, Consumer<Frame> action) {
+    List<Frame> pending = new ArrayList<>(root.children.values());
+    while (!pending.isEmpty()) {
+      Frame frame = pending.remove(pending.size() - 1);
+      action.accept(frame);
+      pending.addAll(frame.children.values());
+    }
+  }
+
+  private static String kind(Object node) {
+    if (node instanceof Expression.Binary) {
+      return "Binary " + ((Expression.Binary) node).operator.lexeme;
+    } else if (node instanceof Expression.Unary) {
+      return "Unary " + ((Expression.Unary) node).operator.lexeme;
+    } else if (node instanceof Expression.Variable) {
+      return "Variable " + ((Expression.Variable) node).name.lexeme;
+    } else if (node instanceof Stmt.Var) {
+      return "Var " + ((Stmt.Var) node).name.lexeme;
+    }
+
+    return node.getClass().getSimpleName();
+  }
+
+  // Line of the first token under node, -1 when there is none.
+  private static int line(Object node) {
+    if (node instanceof Expression.Binary) {
+      Expression.Binary binary = (Expression.Binary) node;
+      int line = line(binary.left);
+      return line >= 0 ? line : binary.operator.line;
+    } else if (node instanceof Expression.Unary) {
+      return ((Expression.Unary) node).operator.line;
+    } else if (node instanceof Expression.Variable) {
+      return ((Expression.Variable) node).name.line;
+    } else if (node instanceof Expression.Grouping) {
+      return line(((Expression.Grouping) node).expression);
+    } else if (node instanceof Stmt.Var) {
+      return ((Stmt.Var) node).name.line;
+    } else if (node instanceof Stmt.Print) {
+      return line(((Stmt.Print) node).expression);
+    } else if (node instanceof Stmt.Expr) {
+      return line(((Stmt.Expr) node).expression);
+    }
+
+    return -1;
+  }
+}
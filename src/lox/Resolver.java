@@ -0,0 +1,109 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Static pass that runs between the Parser and the Interpreter. It gives every variable
+// a (depth, slot) pair so the Interpreter never has to look names up at run time.
+// Scopes are keyed by the interned Symbol of the name, compared by identity.
+class Resolver implements Expression.Visitor<Void>, Stmt.Visitor<Void> {
+  // Innermost scope is the last one. The first one holds the globals and lives as long as
+  // the Resolver does, so REPL lines keep seeing the slots given by previous lines.
+  private final List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+
+  Resolver() {
+    scopes.add(new HashMap<>());
+  }
+
+  void resolve(List<Stmt> statements) {
+    for (Stmt statement : statements) {
+      resolve(statement);
+    }
+  }
+
+  private void resolve(Stmt stmt) {
+    stmt.accept(this);
+  }
+
+  private void resolve(Expression expr) {
+    expr.accept(this);
+  }
+
+  @Override
+  public Void visitExprStmt(Stmt.Expr stmt) {
+    resolve(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStmt(Stmt.Print stmt) {
+    resolve(stmt.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStmt(Stmt.Var stmt) {
+    // The initializer is resolved first, so it cannot see the variable being declared.
+    if (stmt.initializer != null) {
+      resolve(stmt.initializer);
+    }
+
+    stmt.slot = declare(scopes.get(scopes.size() - 1), stmt.name.symbol);
+    return null;
+  }
+
+  @Override
+  public Void visitBinaryExpression(Expression.Binary expr) {
+    resolve(expr.left);
+    resolve(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpression(Expression.Grouping expr) {
+    resolve(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpression(Expression.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpression(Expression.Variable expr) {
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      Integer slot = scopes.get(i).get(expr.name.symbol);
+      if (slot != null) {
+        expr.depth = scopes.size() - 1 - i;
+        expr.slot = slot;
+        return null;
+      }
+    }
+
+    // Not declared yet. Assume it is a global that will be defined later, like the book does;
+    // if it is not, the Environment reports the undefined variable at run time.
+    expr.depth = scopes.size() - 1;
+    expr.slot = declare(scopes.get(0), expr.name.symbol);
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpression(Expression.Unary expr) {
+    resolve(expr.right);
+    return null;
+  }
+
+  // Redeclaring a name in the same scope reuses its slot.
+  private int declare(Map<Symbol, Integer> scope, Symbol name) {
+    Integer slot = scope.get(name);
+    if (slot == null) {
+      slot = scope.size();
+      scope.put(name, slot);
+    }
+
+    return slot;
+  }
+}
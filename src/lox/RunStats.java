@@ -0,0 +1,193 @@
+package lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+// Wall time and allocated bytes of each phase of the last LoxContext.eval(), with the sizes
+// of what went through them. See LoxContext.collectStats().
+// Allocations are those of the thread calling eval(). The pool threads of --parallel are not
+// counted, and neither are allocations on JVMs that cannot measure them (reported as -1).
+// Phases that did not run stay at 0. With lazy tokens, scanning happens while parsing and is
+// part of the parse phase, and the token count is -1.
+public final class RunStats {
+  public enum Phase {
+    SCAN,
+    PARSE,
+    RESOLVE,
+    COMPILE,
+    INTERPRET
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  // Looked up on the first enable(true), null before and when allocations cannot be measured.
+  private com.sun.management.ThreadMXBean allocations;
+  private boolean enabled = false;
+  private final long[] nanos = new long[PHASES.length];
+  private final long[] bytes = new long[PHASES.length];
+  private long startNanos;
+  private long startBytes;
+  private long tokens = -1;
+  private long nodes = 0;
+  private long environmentSize = 0;
+
+  public long nanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  public long allocatedBytes(Phase phase) {
+    return allocations == null ? -1 : bytes[phase.ordinal()];
+  }
+
+  public long tokens() {
+    return tokens;
+  }
+
+  public long nodes() {
+    return nodes;
+  }
+
+  // Variables defined in the globals after running.
+  public long environmentSize() {
+    return environmentSize;
+  }
+
+  public String toJson() {
+    StringBuilder json = new StringBuilder("{\"phases\":{");
+    for (Phase phase : PHASES) {
+      if (phase.ordinal() > 0) json.append(',');
+      json.append('"').append(phase.name().toLowerCase()).append("\":{\"nanos\":")
+          .append(nanos(phase)).append(",\"allocatedBytes\":")
+          .append(allocatedBytes(phase)).append('}');
+    }
+    json.append("},\"tokens\":").append(tokens)
+        .append(",\"nodes\":").append(nodes)
+        .append(",\"environmentSize\":").append(environmentSize)
+        .append('}');
+    return json.toString();
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+
+  // Everything below is a no-op unless enabled, so the context can call it unconditionally.
+
+  // Allocation counting is a JVM wide setting, so it is only switched on when a context
+  // asks for stats. It stays on afterwards, other contexts may be using it.
+  void enable(boolean enabled) {
+    this.enabled = enabled;
+    if (enabled && allocations == null) allocations = allocationCounter();
+  }
+
+  private static com.sun.management.ThreadMXBean allocationCounter() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    if (!counter.isThreadAllocatedMemorySupported()) return null;
+    counter.setThreadAllocatedMemoryEnabled(true);
+    return counter;
+  }
+
+  boolean enabled() {
+    return enabled;
+  }
+
+  void reset() {
+    for (int i = 0; i < PHASES.length; i++) {
+      nanos[i] = 0;
+      bytes[i] = 0;
+    }
+    tokens = -1;
+    nodes = 0;
+    environmentSize = 0;
+  }
+
+  void start() {
+    if (!enabled) return;
+    startBytes = allocations == null ? 0 : allocations.getCurrentThreadAllocatedBytes();
+    startNanos = System.nanoTime();
+  }
+
+  // Adds the time since start() to phase. Phases run more than once, like statements in
+  // streaming mode, add up.
+  void stop(Phase phase) {
+    if (!enabled) return;
+    nanos[phase.ordinal()] += System.nanoTime() - startNanos;
+    if (allocations != null) {
+      bytes[phase.ordinal()] += allocations.getCurrentThreadAllocatedBytes() - startBytes;
+    }
+  }
+
+  void tokens(long count) {
+    if (enabled) tokens = Math.max(tokens, 0) + count;
+  }
+
+  void nodes(List<Stmt> statements) {
+    if (enabled) nodes += NodeCounter.count(statements);
+  }
+
+  void environmentSize(int size) {
+    if (enabled) environmentSize = size;
+  }
+
+  private static final class NodeCounter implements Expression.Visitor<Integer>,
+                                                      Stmt.Visitor<Integer> {
+    private static final NodeCounter INSTANCE = new NodeCounter();
+
+    static long count(List<Stmt> statements) {
+      long count = 0;
+      for (Stmt statement : statements) {
+        // Statements with syntax errors are null.
+        if (statement != null) count += statement.accept(INSTANCE);
+      }
+      return count;
+    }
+
+    private int count(Expression expr) {
+      return expr == null ? 0 : expr.accept(this);
+    }
+
+    @Override
+    public Integer visitExprStmt(Stmt.Expr stmt) {
+      return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      return 1 + count(stmt.expression);
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      return 1 + count(stmt.initializer);
+    }
+
+    @Override
+    public Integer visitBinaryExpression(Expression.Binary expr) {
+      return 1 + count(expr.left) + count(expr.right);
+    }
+
+    @Override
+    public Integer visitGroupingExpression(Expression.Grouping expr) {
+      return 1 + count(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpression(Expression.Literal expr) {
+      return 1;
+    }
+
+    @Override
+    public Integer visitVariableExpression(Expression.Variable expr) {
+      return 1;
+    }
+
+    @Override
+    public Integer visitUnaryExpression(Expression.Unary expr) {
+      return 1 + count(expr.right);
+    }
+  }
+}
@@ -2,31 +2,159 @@ package lox;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static lox.TokenType.*;
 
-class Scanner {
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+// Tokens can be pulled one at a time with nextToken(), or through the Iterator interface,
+// so the Parser does not need the whole list in memory. scanTokens() still builds the list,
+// and scanPacked() builds it without allocating per token. See PackedTokens.
+// A Scanner can also cover just one chunk of the source, for ParallelScanner.
+class Scanner implements Iterator<Token> {
+  // A String for the REPL, a MappedSource when running a file.
+  private final CharSequence source;
+  private final SymbolTable symbols;
+  private final ErrorReporter reporter;
+  // Token made by the last scanToken() call, null for whitespace and comments.
+  private Token scanned = null;
+  // Set while scanPacked() runs. Tokens are then appended here instead of built.
+  private PackedTokens packed = null;
+  private boolean reachedEnd = false;
   private int start = 0;
   private int current = 0;
   private int line = 1;
+  // Scanning stops here, before the end of the source when scanning a chunk.
+  private final int end;
+  // Chunk scanners keep their errors here, with lines counted from the chunk start, until
+  // ParallelScanner knows the line the chunk starts at. Null when errors go to the reporter.
+  private final List<Integer> errorLines;
+  private final List<String> errorMessages;
+  // Where a string running past the end of the chunk starts, and its line, or -1.
+  private int unfinishedString = -1;
+  private int unfinishedLine = -1;
 
-  Scanner(String source) {
+  Scanner(CharSequence source, SymbolTable symbols, ErrorReporter reporter) {
     this.source = source;
+    this.symbols = symbols;
+    this.reporter = reporter;
+    this.end = source.length();
+    this.errorLines = null;
+    this.errorMessages = null;
+  }
+
+  // Scans source[from, to) with scanChunk(). Lines are counted from 1 at from.
+  Scanner(CharSequence source, int from, int to, SymbolTable symbols) {
+    this.source = source;
+    this.symbols = symbols;
+    this.reporter = null;
+    this.current = from;
+    this.end = to;
+    this.errorLines = new ArrayList<>();
+    this.errorMessages = new ArrayList<>();
   }
 
   List<Token> scanTokens() {
+    List<Token> tokens = new ArrayList<>();
+    Token token;
+    do {
+      token = nextToken();
+      tokens.add(token);
+    } while (token.type != EOF);
+
+    return tokens;
+  }
+
+  PackedTokens scanPacked() {
+    packed = new PackedTokens(source, symbols);
+    while (!isAtEnd()) {
+      start = current;
+      scanToken();
+    }
+
+    packed.add(EOF, current, 0, line);
+    reachedEnd = true;
+    return packed;
+  }
+
+  // Scans the whole chunk, without an EOF token at the end. It stops early at a string that
+  // does not end inside the chunk, see unfinishedString().
+  PackedTokens scanChunk() {
+    packed = new PackedTokens(source, symbols);
+    while (!isAtEnd() && unfinishedString < 0) {
+      start = current;
+      scanToken();
+    }
+
+    return packed;
+  }
+
+  int unfinishedString() {
+    return unfinishedString;
+  }
+
+  int unfinishedLine() {
+    return unfinishedLine;
+  }
+
+  // Line the scanner is at, counted from 1 at the start of what it scans.
+  int line() {
+    return line;
+  }
+
+  // Passes the errors of a chunk to reporter, moved down by the lines before the chunk.
+  void reportErrors(ErrorReporter reporter, int lineOffset) {
+    for (int i = 0; i < errorLines.size(); i++) {
+      reporter.error(errorLines.get(i) + lineOffset, errorMessages.get(i));
+    }
+  }
+
+  // Scans on from position, at line, appending the tokens to packed until it reaches
+  // another position. Returns where it stopped: past it when a token goes across it.
+  int scanFrom(PackedTokens packed, int position, int line, int until) {
+    this.packed = packed;
+    this.current = position;
+    this.line = line;
+    return scanTo(until);
+  }
+
+  int scanTo(int until) {
+    while (!isAtEnd() && current < until) {
+      start = current;
+      scanToken();
+    }
+
+    return current;
+  }
+
+  // Scans and returns the next token. Once the source is over it keeps returning EOF.
+  Token nextToken() {
     while(!isAtEnd()) {
       // we are at the beinning of the next lexeme.
       start = current;
       scanToken();
+      if (scanned != null) {
+        Token token = scanned;
+        scanned = null;
+        return token;
+      }
     }
 
-    tokens.add(new Token(EOF, "", null, line));
-    return tokens;
+    reachedEnd = true;
+    return new Token(EOF, "", null, line);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !reachedEnd;
+  }
+
+  @Override
+  public Token next() {
+    if (reachedEnd) throw new NoSuchElementException();
+    return nextToken();
   }
 
   private void scanToken() {
@@ -77,7 +205,7 @@ class Scanner {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Lox.error(line, "Unexpected character.");
+          error(line, "Unexpected character.");
         }
         break;
     }
@@ -87,19 +215,23 @@ class Scanner {
     while (isAlphaNumeric(peek())) advance();
 
     // Let's find which identifier.
-    String text = source.substring(start, current);
-    TokenType type = keywords.get(text);
-    if (type == null) type = IDENTIFIER;
-    addToken(type);
+    addToken(keyword(start, current));
   }
   private void string() {
+    int startLine = line;
     while (peek() != '"' && !isAtEnd()) {
       if (peek() == '\n') line++;
       advance();
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+      if (end < source.length()) {
+        // The chunk is over, not the source. Whoever scans on knows where the string ends.
+        unfinishedString = start;
+        unfinishedLine = startLine;
+        return;
+      }
+      error(line, "Unterminated string.");
       return;
     }
 
@@ -108,9 +240,12 @@ class Scanner {
     // the above code that deals with unfinished strings, we only have the option of finding '"' 
     // and that is managed in the following code.
 
-    // Trim the surrounding quotes.
-    String value = source.substring(start + 1, current - 1);  // This takes the string in between quotes.
-    // the one we have been looking into.
+    // Trim the surrounding quotes. PackedTokens does it later, only if the value is needed.
+    String value = null;
+    if (packed == null) {
+      value = source.subSequence(start + 1, current - 1).toString();  // This takes the string in between quotes.
+      // the one we have been looking into.
+    }
     addToken(STRING, value);
   }
 
@@ -124,7 +259,38 @@ class Scanner {
       while (isDigit(peek())) advance();
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(NUMBER, packed == null ? parseNumber(source, start, current) : null);
+  }
+
+  // Powers of ten that are exact as doubles.
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  // Parses a NUMBER lexeme without copying it into a String. With up to 15 digits the digits
+  // and the power of ten are both exact doubles, so one division gives the correctly rounded
+  // value, the same Double.parseDouble() gives. Longer numbers still go through it.
+  static double parseNumber(CharSequence source, int start, int end) {
+    long digits = 0;
+    int digitCount = 0;
+    int fractionDigits = 0;
+    boolean fraction = false;
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '.') {
+        fraction = true;
+        continue;
+      }
+      digits = digits * 10 + (c - '0');
+      digitCount++;
+      if (fraction) fractionDigits++;
+    }
+
+    if (digitCount <= 15) {
+      return digits / POWERS_OF_TEN[fractionDigits];
+    }
+    return Double.parseDouble(source.subSequence(start, end).toString());
   }
   private boolean match(char expected) {
     if(isAtEnd()) return false;
@@ -140,7 +306,7 @@ class Scanner {
   }
 
   private char peekNext() {
-    if (current + 1 >= source.length()) return '\0';
+    if (current + 1 >= end) return '\0';
     return source.charAt(current + 1);
   }
 
@@ -160,7 +326,16 @@ class Scanner {
   }
 
   private boolean isAtEnd() {
-    return current >= source.length();
+    return current >= end;
+  }
+
+  private void error(int line, String message) {
+    if (errorLines == null) {
+      reporter.error(line, message);
+    } else {
+      errorLines.add(line);
+      errorMessages.add(message);
+    }
   }
 
   private char advance() {
@@ -172,11 +347,40 @@ class Scanner {
   }
 
   private void addToken(TokenType type, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(type, text, literal, line));
+    if (packed != null) {
+      packed.add(type, start, current - start, line);
+      return;
+    }
+
+    if (type == IDENTIFIER) {
+      Symbol symbol = symbols.intern(source, start, current);
+      scanned = new Token(type, symbol.name, literal, line, symbol);
+      return;
+    }
+
+    String text = source.subSequence(start, current).toString();
+    scanned = new Token(type, text, literal, line);
+  }
+
+  // Finds the keyword in source[start, end) without building a String for it.
+  private TokenType keyword(int start, int end) {
+    int length = end - start;
+    for (int i = 0; i < keywordNames.length; i++) {
+      String name = keywordNames[i];
+      if (name.length() != length || name.charAt(0) != source.charAt(start)) continue;
+
+      int j = 1;
+      while (j < length && name.charAt(j) == source.charAt(start + j)) j++;
+      if (j == length) return keywordTypes[i];
+    }
+
+    return IDENTIFIER;
   }
 
   private static final Map<String, TokenType> keywords;
+  // The same keywords as arrays, for keyword().
+  private static final String[] keywordNames;
+  private static final TokenType[] keywordTypes;
 
   static {
     keywords = new HashMap<>();
@@ -196,5 +400,11 @@ class Scanner {
     keywords.put("true", TRUE);
     keywords.put("var", VAR);
     keywords.put("while", WHILE);
+
+    keywordNames = keywords.keySet().toArray(new String[0]);
+    keywordTypes = new TokenType[keywordNames.length];
+    for (int i = 0; i < keywordNames.length; i++) {
+      keywordTypes[i] = keywords.get(keywordNames[i]);
+    }
   }
 }
@@ -0,0 +1,88 @@
+package lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU cache of CompiledScripts, keyed by the SHA-256 of the source, so a snippet
+// evaluated again skips the Scanner, Parser and Resolver. Thread safe, meant to be shared
+// by all the contexts of a service.
+public final class ScriptCache {
+  private final int capacity;
+  private final boolean optimize;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  // Access ordered, so the eldest entry is the least recently used one.
+  private final Map<ByteBuffer, CompiledScript> scripts;
+
+  public ScriptCache(int capacity) {
+    this(capacity, false);
+  }
+
+  // With optimize, scripts are compiled with the Optimizer. See CompiledScript.compile().
+  public ScriptCache(int capacity, boolean optimize) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+    this.capacity = capacity;
+    this.optimize = optimize;
+    this.scripts = new LinkedHashMap<ByteBuffer, CompiledScript>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CompiledScript> eldest) {
+        if (size() <= ScriptCache.this.capacity) return false;
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  // Returns the compiled script for source, compiling it on a miss. Compiling happens out
+  // of the lock, so a slow parse does not hold back other threads. Two threads missing the
+  // same source at once both compile it, and the first one stored wins.
+  public CompiledScript get(CharSequence source) {
+    ByteBuffer key = hash(source);
+    synchronized (this) {
+      CompiledScript script = scripts.get(key);
+      if (script != null) {
+        hits++;
+        return script;
+      }
+      misses++;
+    }
+
+    CompiledScript compiled = CompiledScript.compile(source, optimize);
+    synchronized (this) {
+      CompiledScript raced = scripts.putIfAbsent(key, compiled);
+      return raced != null ? raced : compiled;
+    }
+  }
+
+  public synchronized long hits() {
+    return hits;
+  }
+
+  public synchronized long misses() {
+    return misses;
+  }
+
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  public synchronized int size() {
+    return scripts.size();
+  }
+
+  private static ByteBuffer hash(CharSequence source) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return ByteBuffer.wrap(digest.digest(source.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException error) {
+      // Every Java platform has to provide SHA-256.
+      throw new IllegalStateException(error);
+    }
+  }
+}
@@ -45,6 +45,7 @@ abstract class Stmt {
 
     final Token name;
     final Expression initializer;
+    int slot;
   }
 
   abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,27 @@
+package lox;
+
+// An interned identifier. There is one Symbol per distinct name in a SymbolTable, so
+// symbols are compared by identity, and their hash is computed only once.
+final class Symbol {
+  final String name;
+  // Dense id, in order of first appearance in the table.
+  final int id;
+  private final int hash;
+
+  Symbol(String name, int id, int hash) {
+    this.name = name;
+    this.id = id;
+    this.hash = hash;
+  }
+
+  // equals() stays the identity check of Object.
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,69 @@
+package lox;
+
+import java.util.Arrays;
+
+// Interns identifier lexemes into Symbols. The Scanner looks names up straight from the
+// source characters, so an identifier seen before costs no substring, and every token of
+// the same name shares one Symbol and one lexeme String.
+// Open addressing hash table. Each LoxContext owns one, so names only live as long as the
+// context. Lookups are synchronized because ParallelScanner shares it between chunks.
+final class SymbolTable {
+  private Symbol[] table = new Symbol[256];
+  private int count = 0;
+
+  synchronized Symbol intern(CharSequence source, int start, int end) {
+    // Same hash as String.hashCode() of the name.
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + source.charAt(i);
+    }
+
+    int mask = table.length - 1;
+    int index = spread(hash) & mask;
+    for (Symbol symbol = table[index]; symbol != null; symbol = table[index]) {
+      if (symbol.hashCode() == hash && matches(symbol.name, source, start, end)) return symbol;
+      index = (index + 1) & mask;
+    }
+
+    Symbol symbol = new Symbol(source.subSequence(start, end).toString(), count, hash);
+    table[index] = symbol;
+    count++;
+    // Keep at most half of the table used, so probe sequences stay short.
+    if (count * 2 > table.length) grow();
+    return symbol;
+  }
+
+  Symbol intern(String name) {
+    return intern(name, 0, name.length());
+  }
+
+  synchronized int size() {
+    return count;
+  }
+
+  private static boolean matches(String name, CharSequence source, int start, int end) {
+    if (name.length() != end - start) return false;
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) != source.charAt(start + i)) return false;
+    }
+
+    return true;
+  }
+
+  private void grow() {
+    Symbol[] old = table;
+    table = new Symbol[old.length * 2];
+    int mask = table.length - 1;
+    for (Symbol symbol : old) {
+      if (symbol == null) continue;
+      int index = spread(symbol.hashCode()) & mask;
+      while (table[index] != null) index = (index + 1) & mask;
+      table[index] = symbol;
+    }
+  }
+
+  // Mixes the high bits in, the low bits of String hashes of short names are poor.
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -5,12 +5,19 @@ class Token {
   final String lexeme;
   final Object literal;
   final int line;
+  // Interned name of IDENTIFIER tokens, null for the rest.
+  final Symbol symbol;
 
   Token(TokenType type, String lexeme, Object literal, int line) {
+    this(type, lexeme, literal, line, null);
+  }
+
+  Token(TokenType type, String lexeme, Object literal, int line, Symbol symbol) {
     this.type = type;
     this.lexeme = lexeme;
     this.literal = literal;
     this.line = line;
+    this.symbol = symbol;
   }
 
   public String toString() {
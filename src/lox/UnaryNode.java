@@ -0,0 +1,55 @@
+package lox;
+
+// Specialized behaviour of one Expression.Unary, the same idea as BinaryNode.
+// Unary operators accept a single operand type, so the node only has to pick its
+// operator the first time it runs.
+abstract class UnaryNode {
+  static final UnaryNode UNINITIALIZED = new UnaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Unary expr) {
+      switch (expr.operator.type) {
+        case MINUS: expr.node = NEGATE; break;
+        case BANG: expr.node = NOT; break;
+        default: expr.node = GENERIC; break;
+      }
+      return expr.node.execute(interpreter, expr);
+    }
+  };
+
+  static final UnaryNode GENERIC = new UnaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Unary expr) {
+      return interpreter.unary(expr, interpreter.evaluate(expr.right));
+    }
+  };
+
+  abstract Object execute(Interpreter interpreter, Expression.Unary expr);
+
+  double executeNumber(Interpreter interpreter, Expression.Unary expr) {
+    return interpreter.unbox(execute(interpreter, expr));
+  }
+
+  private static final UnaryNode NEGATE = new UnaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Unary expr) {
+      return executeNumber(interpreter, expr);
+    }
+
+    @Override
+    double executeNumber(Interpreter interpreter, Expression.Unary expr) {
+      double right = interpreter.evaluateNumber(expr.right);
+      if (!interpreter.isNumber) {
+        // Never returns: a non number operand is a runtime error.
+        Interpreter.checkNumberOperand(expr.operator, interpreter.nonNumber);
+      }
+      return -right;
+    }
+  };
+
+  private static final UnaryNode NOT = new UnaryNode() {
+    @Override
+    Object execute(Interpreter interpreter, Expression.Unary expr) {
+      return !Interpreter.isTruthy(interpreter.evaluate(expr.right));
+    }
+  };
+}
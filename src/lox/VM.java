@@ -0,0 +1,188 @@
+package lox;
+
+import java.util.Arrays;
+
+// Stack based virtual machine that runs the Chunks made by the Compiler.
+// The value semantics (truthiness, equality, printing and runtime errors) are the
+// ones of the Interpreter, so both engines give the same output for the same script.
+class VM {
+  // Globals outlive a single run, as the REPL compiles every line on its own.
+  private final Environment environment = new Environment();
+  private Object[] stack = new Object[256];
+  private int stackTop = 0;
+  private final OutputSink output;
+  private final ErrorReporter reporter;
+
+  VM() {
+    this(OutputSink.of(System.out), new ErrorReporter());
+  }
+
+  VM(OutputSink output, ErrorReporter reporter) {
+    this.output = output;
+    this.reporter = reporter;
+  }
+
+  Environment globals() {
+    return environment;
+  }
+
+  // Returns false when a runtime error stopped the execution.
+  boolean interpret(Chunk chunk) {
+    return interpret(chunk, environment);
+  }
+
+  // Runs with the given globals instead of the VM's own. See CompiledScript.
+  boolean interpret(Chunk chunk, Environment environment) {
+    try {
+      run(chunk, environment);
+      return true;
+    } catch (RuntimeError error) {
+      reporter.runtimeError(error);
+      return false;
+    } finally {
+      // Leave the stack clean for the next REPL line, also after an error.
+      Arrays.fill(stack, 0, stackTop, null);
+      stackTop = 0;
+    }
+  }
+
+  private void run(Chunk chunk, Environment environment) {
+    final byte[] code = chunk.code;
+    final Token[] tokens = chunk.tokens;
+    final Object[] constants = chunk.constants();
+    int ip = 0;
+
+    for (;;) {
+      int offset = ip;
+      byte instruction = code[ip++];
+      switch (instruction) {
+        case OpCode.CONSTANT: {
+          int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+          ip += 2;
+          push(constants[index]);
+          break;
+        }
+        case OpCode.CONSTANT_LONG: {
+          int index = ((code[ip] & 0xff) << 24) | ((code[ip + 1] & 0xff) << 16) |
+                      ((code[ip + 2] & 0xff) << 8) | (code[ip + 3] & 0xff);
+          ip += 4;
+          push(constants[index]);
+          break;
+        }
+        case OpCode.NIL: push(null); break;
+        case OpCode.TRUE: push(true); break;
+        case OpCode.FALSE: push(false); break;
+        case OpCode.POP: stack[--stackTop] = null; break;
+        case OpCode.GET_VARIABLE: {
+          int depth = code[ip] & 0xff;
+          int slot = ((code[ip + 1] & 0xff) << 8) | (code[ip + 2] & 0xff);
+          ip += 3;
+          push(environment.get(depth, slot, tokens[offset]));
+          break;
+        }
+        case OpCode.DEFINE_GLOBAL: {
+          int slot = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+          ip += 2;
+          environment.define(slot, pop());
+          break;
+        }
+        case OpCode.EQUAL: {
+          Object right = pop();
+          Object left = pop();
+          push(Interpreter.isEqual(left, right));
+          break;
+        }
+        case OpCode.NOT_EQUAL: {
+          Object right = pop();
+          Object left = pop();
+          push(!Interpreter.isEqual(left, right));
+          break;
+        }
+        case OpCode.GREATER: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left > (double)right);
+          break;
+        }
+        case OpCode.GREATER_EQUAL: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left >= (double)right);
+          break;
+        }
+        case OpCode.LESS: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left < (double)right);
+          break;
+        }
+        case OpCode.LESS_EQUAL: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left <= (double)right);
+          break;
+        }
+        case OpCode.ADD: {
+          Object right = pop();
+          Object left = pop();
+          push(Interpreter.add(tokens[offset], left, right));
+          break;
+        }
+        case OpCode.SUBTRACT: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left - (double)right);
+          break;
+        }
+        case OpCode.MULTIPLY: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left * (double)right);
+          break;
+        }
+        case OpCode.DIVIDE: {
+          Object right = pop();
+          Object left = pop();
+          Interpreter.checkNumberOperands(tokens[offset], left, right);
+          push((double)left / (double)right);
+          break;
+        }
+        case OpCode.NOT:
+          push(!Interpreter.isTruthy(pop()));
+          break;
+        case OpCode.NEGATE: {
+          Object right = pop();
+          Interpreter.checkNumberOperand(tokens[offset], right);
+          push(-(double)right);
+          break;
+        }
+        case OpCode.PRINT:
+          output.println(Interpreter.stringify(pop()));
+          break;
+        case OpCode.RETURN:
+          return;
+        default:
+          throw new IllegalStateException("Unknown opcode " + instruction + " at " + offset + ".");
+      }
+    }
+  }
+
+  private void push(Object value) {
+    if (stackTop == stack.length) {
+      stack = Arrays.copyOf(stack, stackTop * 2);
+    }
+    stack[stackTop++] = value;
+  }
+
+  private Object pop() {
+    Object value = stack[--stackTop];
+    stack[stackTop] = null;
+    return value;
+  }
+}
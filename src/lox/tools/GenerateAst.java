@@ -14,12 +14,15 @@ public class GenerateAst {
       System.exit(64);
     }
     String outputDir = args[0];
+    // Variable.cache is the inline cache of the Interpreter, written while running. It is
+    // only filled in trees the Interpreter owns, never in the shared tree of a
+    // CompiledScript, so threads never race on it. See Interpreter.visitVariableExpression().
     defineAst (outputDir, "Expression", Arrays.asList(
-      "Binary  : Expression left, Token operator, Expression right",
+      "Binary  : Expression left, Token operator, Expression right; BinaryNode node = BinaryNode.UNINITIALIZED",
       "Grouping: Expression expression",
       "Literal : Object value",
-      "Variable: Token name",
-      "Unary   : Token operator, Expression right:"
+      "Variable: Token name; int depth, int slot, Object[] cache",
+      "Unary   : Token operator, Expression right; UnaryNode node = UnaryNode.UNINITIALIZED"
     ));
 
     // Generator for Statements. Statements don't evaluate to a value, but they produce side-effects.
@@ -27,7 +30,7 @@ public class GenerateAst {
     defineAst(outputDir, "Stmt", Arrays.asList(
       "Expr : Expression expression",
       "Print: Expression expression",
-      "Var  : Token name, Expression initializer"
+      "Var  : Token name, Expression initializer; int slot"
     ));
   }
 
@@ -49,8 +52,12 @@ public class GenerateAst {
     // The AST classes.
     for (String type : types) {
       String className = type.split(":")[0].trim();
-      String fields = type.split(":")[1].trim();
-      defineType(writer, baseName, className, fields);
+      // Fields after ';' are not part of the constructor. They are filled later by the Resolver,
+      // or rewritten by the Interpreter when a node specializes itself.
+      String[] parts = type.split(":")[1].split(";");
+      String fields = parts[0].trim();
+      String resolved = parts.length > 1 ? parts[1].trim() : "";
+      defineType(writer, baseName, className, fields, resolved);
     }
 
     // The base accept() method for the visitor pattern.
@@ -75,7 +82,7 @@ public class GenerateAst {
 
   private static void defineType(
     PrintWriter writer, String baseName,
-    String className, String fieldList) {
+    String className, String fieldList, String resolvedList) {
       writer.println("  static class " + className + " extends " + baseName + " {");
 
       //Constructor
@@ -103,6 +110,13 @@ public class GenerateAst {
         writer.println("    final " + field + ";");
       }
 
+      // Mutable fields, not set by the constructor. They may carry an initializer.
+      if (!resolvedList.isEmpty()) {
+        for (String field : resolvedList.split(", ")) {
+          writer.println("    " + field + ";");
+        }
+      }
+
       writer.println("  }");
     }
 }
@@ -0,0 +1,132 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A snapshot that does not decode must read as no snapshot, never as an exception.
+class AstSnapshotTest {
+  private static final Charset CHARSET = StandardCharsets.UTF_8;
+  private static final String SOURCE =
+      "var x = 1;\nvar a = 1 + 2 * -x;\nprint \"hello\";\nprint a == (a);\n";
+
+  @TempDir
+  Path directory;
+
+  private Path script;
+  private Path snapshot;
+  private byte[] hash;
+  private byte[] bytes;
+
+  @BeforeEach
+  void writeSnapshot() throws IOException {
+    script = directory.resolve("script.lox");
+    Files.writeString(script, SOURCE, CHARSET);
+    snapshot = AstSnapshot.pathFor(script);
+    hash = AstSnapshot.hash(script);
+    AstSnapshot.write(snapshot, hash, CHARSET, parse(SOURCE));
+    bytes = Files.readAllBytes(snapshot);
+  }
+
+  @Test
+  void readsBackTheSameTree() {
+    List<Stmt> statements = AstSnapshot.read(snapshot, hash, CHARSET, new SymbolTable());
+    assertEquals(Trees.dump(parse(SOURCE)), Trees.dump(statements));
+  }
+
+  @Test
+  void truncatedSnapshotIsIgnored() throws IOException {
+    for (int length = 0; length < bytes.length; length++) {
+      Files.write(snapshot, Arrays.copyOf(bytes, length));
+      assertNull(read(), "truncated to " + length + " bytes");
+    }
+  }
+
+  @Test
+  void corruptedLengthIsIgnored() throws IOException {
+    // The length of "hello" comes right before its bytes.
+    int at = indexOf(bytes, "hello".getBytes(CHARSET)) - 4;
+    for (int length : new int[] {0xfffffff0, Integer.MAX_VALUE, bytes.length}) {
+      byte[] corrupted = bytes.clone();
+      ByteBuffer.wrap(corrupted).putInt(at, length);
+      Files.write(snapshot, corrupted);
+      assertNull(read(), "string length " + length);
+    }
+  }
+
+  @Test
+  void corruptedStatementCountIsIgnored() throws IOException {
+    // The statement count follows the hash.
+    int at = indexOf(bytes, hash) + hash.length;
+    for (int count : new int[] {-1, Integer.MAX_VALUE}) {
+      byte[] corrupted = bytes.clone();
+      ByteBuffer.wrap(corrupted).putInt(at, count);
+      Files.write(snapshot, corrupted);
+      assertNull(read(), "statement count " + count);
+    }
+  }
+
+  @Test
+  void anyCorruptedByteIsReadOrIgnored() throws IOException {
+    for (int i = 0; i < bytes.length; i++) {
+      for (int value : new int[] {0x00, 0x08, 0x7f, 0x80, 0xff}) {
+        byte[] corrupted = bytes.clone();
+        corrupted[i] = (byte) value;
+        Files.write(snapshot, corrupted);
+        // Either outcome is fine, as long as nothing is thrown.
+        read();
+      }
+    }
+  }
+
+  @Test
+  void contextParsesAgainWhenSnapshotIsCorrupt() throws IOException {
+    byte[] corrupted = bytes.clone();
+    int at = indexOf(bytes, "hello".getBytes(CHARSET)) - 4;
+    ByteBuffer.wrap(corrupted).putInt(at, 0xfffffff0);
+    Files.write(snapshot, corrupted);
+
+    ListSink output = new ListSink();
+    List<String> errors = new ArrayList<>();
+    LoxContext context = new LoxContext(output, errors::add);
+    context.snapshot(true);
+    assertEquals(LoxContext.Status.OK, context.evalFile(script, CHARSET));
+    assertEquals(List.of("hello", "true"), output.lines);
+    assertEquals(List.of(), errors);
+    // The broken snapshot was replaced by a good one.
+    assertNotNull(read());
+  }
+
+  private List<Stmt> read() {
+    return AstSnapshot.read(snapshot, hash, CHARSET, new SymbolTable());
+  }
+
+  private static List<Stmt> parse(String source) {
+    ErrorReporter reporter = new ErrorReporter();
+    return new Parser(new Scanner(source, new SymbolTable(), reporter).scanPacked(), reporter)
+        .parse();
+  }
+
+  private static int indexOf(byte[] bytes, byte[] part) {
+    outer:
+    for (int i = 0; i + part.length <= bytes.length; i++) {
+      for (int j = 0; j < part.length; j++) {
+        if (bytes[i + j] != part[j]) continue outer;
+      }
+      return i;
+    }
+    throw new AssertionError("not found");
+  }
+}
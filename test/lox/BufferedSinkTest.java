@@ -0,0 +1,139 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BufferedSinkTest {
+  private static final String NL = System.lineSeparator();
+  // U+1F600, two chars in UTF-16 and four bytes in UTF-8.
+  private static final String EMOJI = "😀";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void lineFlushWritesEveryLine() {
+    Channel channel = new Channel();
+    BufferedSink sink = sink(channel, 1024, BufferedSink.FlushPolicy.LINE);
+    sink.println("one");
+    assertEquals("one" + NL, channel.text());
+    sink.println("two");
+    assertEquals("one" + NL + "two" + NL, channel.text());
+  }
+
+  @Test
+  void fullFlushWaitsForFlush() {
+    Channel channel = new Channel();
+    BufferedSink sink = sink(channel, 1024, BufferedSink.FlushPolicy.FULL);
+    sink.println("one");
+    sink.println("two");
+    assertEquals("", channel.text());
+    sink.flush();
+    assertEquals("one" + NL + "two" + NL, channel.text());
+  }
+
+  @Test
+  void fullBufferIsWrittenOut() {
+    Channel channel = new Channel();
+    BufferedSink sink = sink(channel, 8, BufferedSink.FlushPolicy.FULL);
+    String line = "0123456789abcdefghij";
+    sink.println(line);
+    // Two full buffers went out, the rest waits.
+    assertEquals(line.substring(0, 16), channel.text());
+    sink.flush();
+    assertEquals(line + NL, channel.text());
+  }
+
+  @Test
+  void linesAcrossBufferBoundaries() {
+    Channel channel = new Channel();
+    BufferedSink sink = sink(channel, 7, BufferedSink.FlushPolicy.FULL);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      String line = "x".repeat(i % 13) + i;
+      sink.println(line);
+      expected.append(line).append(NL);
+    }
+    sink.flush();
+    assertEquals(expected.toString(), channel.text());
+  }
+
+  @Test
+  void surrogatePairSplitAcrossSmallBuffer() {
+    for (int before = 0; before < 10; before++) {
+      Channel channel = new Channel();
+      BufferedSink sink = sink(channel, 8, BufferedSink.FlushPolicy.FULL);
+      String line = "a".repeat(before) + EMOJI + "b" + EMOJI;
+      sink.println(line);
+      sink.flush();
+      assertEquals(line + NL, channel.text(), "after " + before + " chars");
+    }
+  }
+
+  @Test
+  void surrogatePairSplitAcrossDefaultBuffer() {
+    Channel channel = new Channel();
+    BufferedSink sink = sink(channel, BufferedSink.DEFAULT_CAPACITY,
+                             BufferedSink.FlushPolicy.FULL);
+    // The high surrogate is the last char of the buffer, the low one the first of the next.
+    String line = "a".repeat(BufferedSink.DEFAULT_CAPACITY - 1) + EMOJI + "z";
+    sink.println(line);
+    sink.flush();
+    assertEquals(line + NL, channel.text());
+  }
+
+  @Test
+  void closeFlushesAndClosesTheFile() throws IOException {
+    Path path = directory.resolve("out.txt");
+    BufferedSink sink = BufferedSink.file(path);
+    sink.println("done");
+    sink.close();
+    assertEquals("done" + NL, Files.readString(path, StandardCharsets.UTF_8));
+
+    Channel channel = new Channel();
+    sink(channel, 16, BufferedSink.FlushPolicy.FULL).close();
+    assertFalse(channel.isOpen());
+  }
+
+  private static BufferedSink sink(Channel channel, int capacity,
+                                   BufferedSink.FlushPolicy policy) {
+    return new BufferedSink(channel, StandardCharsets.UTF_8, capacity, policy);
+  }
+
+  // Keeps what was written, to look at it between calls.
+  private static final class Channel implements WritableByteChannel {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private boolean open = true;
+
+    @Override
+    public int write(ByteBuffer source) {
+      int count = source.remaining();
+      while (source.hasRemaining()) bytes.write(source.get());
+      return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    String text() {
+      return bytes.toString(StandardCharsets.UTF_8);
+    }
+  }
+}
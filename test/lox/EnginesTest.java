@@ -0,0 +1,128 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Every engine must print, and fail, like the tree-walking Interpreter. Random expressions
+// mix all operators with every type of operand, so type errors and NaN are covered too.
+class EnginesTest {
+  private static final String[] ATOMS = {
+    "1", "0", "-0", "2.5", "nil", "true", "false", "\"a\"", "\"b\"", "x", "y", "z", "u"
+  };
+  private static final String[] OPERATORS = {
+    "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!="
+  };
+  // x, y and z are defined, u is not. z is NaN.
+  private static final String PRELUDE = "var x = 1;\nvar y = \"s\";\nvar z = 0/0;\n";
+
+  @Test
+  void vm() {
+    assertSameAsInterpreter(context -> context.useVm(true));
+  }
+
+  @Test
+  void nanBoxedVm() {
+    assertSameAsInterpreter(context -> {
+      context.useVm(true);
+      context.nanBoxing(true);
+    });
+  }
+
+  @Test
+  void closures() {
+    assertSameAsInterpreter(context -> context.closures(true));
+  }
+
+  @Test
+  void jit() {
+    assertSameAsInterpreter(context -> context.jit(true));
+  }
+
+  @Test
+  void optimizer() {
+    assertSameAsInterpreter(context -> context.optimize(true));
+  }
+
+  // Streamed statements run once each, a JIT class for them would never pay off.
+  @Test
+  void streamedStatementsAreNotCompiled() {
+    ListSink output = new ListSink();
+    LoxContext context = new LoxContext(output, output::println);
+    context.jit(true);
+    context.collectStats(true);
+    context.eval("print 1;\nprint 2;\n");
+    assertTrue(context.stats().nanos(RunStats.Phase.COMPILE) > 0);
+
+    context.stream(true);
+    context.eval("print 3;\nprint 4;\n");
+    assertEquals(0, context.stats().nanos(RunStats.Phase.COMPILE));
+    assertEquals(List.of("1", "2", "3", "4"), output.lines);
+  }
+
+  // A tree with operators the Parser never makes, as a damaged snapshot can hold, cannot be
+  // compiled. It runs in the Interpreter instead, where those operators give nil.
+  @Test
+  void unknownOperatorsFallBackToTheInterpreter(@TempDir Path directory) throws IOException {
+    Token comma = new Token(TokenType.COMMA, ",", null, 1);
+    List<Stmt> statements = List.of(
+        new Stmt.Print(new Expression.Binary(new Expression.Literal(1.0), comma,
+                                             new Expression.Literal(2.0))),
+        new Stmt.Print(new Expression.Unary(comma, new Expression.Literal(true))));
+    assertNull(JitCompiler.compile(statements));
+    assertNull(ClosureCompiler.compile(statements));
+
+    Path script = directory.resolve("script.lox");
+    Files.writeString(script, "print 1;\nprint 2;\n");
+    AstSnapshot.write(AstSnapshot.pathFor(script), AstSnapshot.hash(script),
+                      StandardCharsets.UTF_8, statements);
+    ListSink output = new ListSink();
+    LoxContext context = new LoxContext(output, output::println);
+    context.snapshot(true);
+    context.jit(true);
+    context.closures(true);
+    assertEquals(LoxContext.Status.OK, context.evalFile(script, StandardCharsets.UTF_8));
+    assertEquals(List.of("nil", "nil"), output.lines);
+  }
+
+  private static void assertSameAsInterpreter(Consumer<LoxContext> engine) {
+    Random random = new Random(3);
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder source = new StringBuilder(PRELUDE);
+      for (int j = 0; j < 3; j++) {
+        source.append("print ").append(expression(random, 4)).append(";\n");
+      }
+      assertEquals(run(source.toString(), context -> { }), run(source.toString(), engine),
+                   source.toString());
+    }
+  }
+
+  // Status, then printed lines and errors in the order they came.
+  private static String run(String source, Consumer<LoxContext> engine) {
+    ListSink output = new ListSink();
+    LoxContext context = new LoxContext(output, output::println);
+    engine.accept(context);
+    return context.eval(source) + " " + output.lines;
+  }
+
+  private static String expression(Random random, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) return ATOMS[random.nextInt(ATOMS.length)];
+    switch (random.nextInt(4)) {
+      case 0: return "-" + expression(random, depth - 1);
+      case 1: return "!" + expression(random, depth - 1);
+      case 2: return "(" + expression(random, depth - 1) + ")";
+      default:
+        return expression(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)]
+            + " " + expression(random, depth - 1);
+    }
+  }
+}
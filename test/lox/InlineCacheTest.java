@@ -0,0 +1,59 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// The inline caches of Expression.Variable are filled in trees the Interpreter owns only.
+class InlineCacheTest {
+  private static final String SOURCE = "var a = 1;\nprint a;\nprint a + a;\n";
+
+  @Test
+  void compiledScriptTreeIsNeverWritten() {
+    CompiledScript script = CompiledScript.compile(SOURCE);
+    ListSink output = new ListSink();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(LoxContext.Status.OK, new LoxContext(output, output::println).eval(script));
+    }
+    assertEquals(List.of("1", "2", "1", "2", "1", "2"), output.lines);
+    for (Expression.Variable variable : variables(script.statements)) {
+      assertNull(variable.cache, variable.name.lexeme + " line " + variable.name.line);
+    }
+  }
+
+  @Test
+  void ownTreeIsCached() {
+    ErrorReporter reporter = new ErrorReporter();
+    List<Stmt> statements = new Parser(
+        new Scanner(SOURCE, new SymbolTable(), reporter).scanPacked(), reporter).parse();
+    new Resolver().resolve(statements);
+    Interpreter interpreter = new Interpreter(new ListSink(), reporter);
+    assertTrue(interpreter.interpret(statements));
+    for (Expression.Variable variable : variables(statements)) {
+      assertSame(interpreter.globals().values(), variable.cache);
+    }
+  }
+
+  private static List<Expression.Variable> variables(List<Stmt> statements) {
+    List<Expression.Variable> variables = new ArrayList<>();
+    for (Stmt statement : statements) {
+      Expression expr = statement instanceof Stmt.Print ? ((Stmt.Print) statement).expression
+                                                        : ((Stmt.Var) statement).initializer;
+      collect(expr, variables);
+    }
+    assertFalse(variables.isEmpty());
+    return variables;
+  }
+
+  private static void collect(Expression expr, List<Expression.Variable> variables) {
+    if (expr instanceof Expression.Variable) {
+      variables.add((Expression.Variable) expr);
+    } else if (expr instanceof Expression.Binary) {
+      collect(((Expression.Binary) expr).left, variables);
+      collect(((Expression.Binary) expr).right, variables);
+    }
+  }
+}
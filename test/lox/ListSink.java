@@ -0,0 +1,18 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps printed lines in a list, for tests.
+final class ListSink implements OutputSink {
+  final List<String> lines = new ArrayList<>();
+
+  @Override
+  public void println(String text) {
+    lines.add(text);
+  }
+
+  @Override
+  public void flush() {
+  }
+}
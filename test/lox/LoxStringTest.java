@@ -0,0 +1,73 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LoxStringTest {
+  private static final Token PLUS = new Token(TokenType.PLUS, "+", null, 1);
+
+  @Test
+  void shortResultsArePlainStrings() {
+    String half = "a".repeat(31);
+    assertEquals(String.class, LoxString.concat(PLUS, half, half + "b").getClass());
+    // 64 chars and up make a rope.
+    Object rope = LoxString.concat(PLUS, half, half + "bc");
+    assertEquals(LoxString.class, rope.getClass());
+    assertEquals(64, ((CharSequence) rope).length());
+    assertEquals(half + half + "bc", rope.toString());
+  }
+
+  @Test
+  void deepRopesFlatten() {
+    StringBuilder expected = new StringBuilder();
+    Object left = "";
+    Object right = "";
+    for (int i = 0; i < 100_000; i++) {
+      String piece = Integer.toString(i % 10);
+      expected.append(piece);
+      left = LoxString.concat(PLUS, left, piece);
+      right = LoxString.concat(PLUS, piece, right);
+    }
+
+    assertEquals(expected.toString(), left.toString());
+    assertEquals(expected.reverse().toString(), right.toString());
+    assertEquals(100_000, ((CharSequence) left).length());
+  }
+
+  @Test
+  void sharedPiecesFlattenOnce() {
+    Object piece = LoxString.concat(PLUS, "x".repeat(40), "y".repeat(40));
+    Object twice = LoxString.concat(PLUS, piece, piece);
+    assertEquals("x".repeat(40) + "y".repeat(40), piece.toString());
+    assertEquals(piece.toString() + piece.toString(), twice.toString());
+  }
+
+  @Test
+  void equalToPlainStrings() {
+    String text = "z".repeat(100);
+    Object rope = LoxString.concat(PLUS, "z".repeat(30), "z".repeat(70));
+    assertEquals(rope, text);
+    assertEquals(text.hashCode(), rope.hashCode());
+    assertEquals(rope, LoxString.concat(PLUS, "z".repeat(70), "z".repeat(30)));
+    assertNotEquals(rope, LoxString.concat(PLUS, "z".repeat(70), "y".repeat(30)));
+    assertNotEquals(rope, 100.0);
+    // String.equals() does not know ropes, Lox equality goes through isEqual().
+    assertTrue(Interpreter.isEqual(text, rope));
+    assertTrue(Interpreter.isEqual(rope, text));
+  }
+
+  @Test
+  void tooLongIsARuntimeError() {
+    // Doubling a rope costs nothing, 64 chars doubled 25 times pass Integer.MAX_VALUE.
+    Object rope = LoxString.concat(PLUS, "a".repeat(32), "a".repeat(32));
+    for (int i = 0; i < 24; i++) rope = LoxString.concat(PLUS, rope, rope);
+    assertEquals(1 << 30, ((CharSequence) rope).length());
+
+    Object last = rope;
+    RuntimeError error = assertThrows(RuntimeError.class,
+                                      () -> LoxString.concat(PLUS, last, last));
+    assertEquals("String is too long.", error.getMessage());
+    assertSame(PLUS, error.token);
+  }
+}
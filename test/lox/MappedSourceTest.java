@@ -0,0 +1,54 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedSourceTest {
+  private static final String SOURCE = "print \"héllo\";\n";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void regularFileIsMapped() throws IOException {
+    Path path = directory.resolve("script.lox");
+    Files.writeString(path, SOURCE, StandardCharsets.UTF_8);
+    CharSequence source = MappedSource.open(path, StandardCharsets.UTF_8);
+    assertTrue(source instanceof MappedSource);
+    assertEquals(SOURCE, source.toString());
+  }
+
+  // Like a process substitution, jlox <(echo 'print 1;'). A pipe reports a size of 0.
+  @Test
+  void pipeIsRead() throws Exception {
+    Path fifo = directory.resolve("script.fifo");
+    Process mkfifo;
+    try {
+      mkfifo = new ProcessBuilder("mkfifo", fifo.toString()).start();
+    } catch (IOException error) {
+      mkfifo = null;
+    }
+    assumeTrue(mkfifo != null && mkfifo.waitFor() == 0, "mkfifo is not available");
+
+    Thread writer = new Thread(() -> {
+      try (OutputStream out = Files.newOutputStream(fifo)) {
+        out.write(SOURCE.getBytes(StandardCharsets.UTF_8));
+      } catch (IOException error) {
+        throw new RuntimeException(error);
+      }
+    });
+    writer.start();
+    CharSequence source = MappedSource.open(fifo, StandardCharsets.UTF_8);
+    writer.join();
+    assertEquals(SOURCE, source.toString());
+  }
+}
@@ -0,0 +1,69 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+// ParallelParser must give the statements and syntax errors of the sequential Parser. Ranges
+// are made tiny so that every ';' can start one.
+class ParallelParserTest {
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+  // Missing and extra ';', unbalanced parentheses, tokens no statement starts with.
+  private static final String[] PARTS = {
+    "var", " ", "x", "12", "\"s\"", "\n", ";", ";", "+", "==", "(", ")", "print", "-", "!",
+    "fun", "class", "=", "y", "nil", "@", "*", "<="
+  };
+
+  @AfterAll
+  static void shutdown() {
+    POOL.shutdown();
+  }
+
+  @Test
+  void matchesParserOnRandomSources() {
+    Random random = new Random(7);
+    for (int i = 0; i < 3000; i++) {
+      StringBuilder source = new StringBuilder();
+      int parts = random.nextInt(150);
+      for (int j = 0; j < parts; j++) {
+        source.append(PARTS[random.nextInt(PARTS.length)]).append(' ');
+      }
+      assertSameStatements(source.toString(), 1 + random.nextInt(10));
+    }
+  }
+
+  @Test
+  void missingSemicolonAcrossRanges() {
+    assertSameStatements("print 1;\nprint 2\nprint 3;\nvar a = 1\nvar b;\nprint a", 1);
+  }
+
+  @Test
+  void errorAtTheStartOfARange() {
+    assertSameStatements("var a = 1;\n= 2;\nprint a;\n);\nprint (a;\nprint a;\n", 2);
+  }
+
+  private static void assertSameStatements(String source, int minTokens) {
+    List<String> expectedErrors = new ArrayList<>();
+    ErrorReporter expectedReporter = new ErrorReporter(expectedErrors::add, null);
+    List<Stmt> expected = new Parser(
+        new Scanner(source, new SymbolTable(), expectedReporter).scanPacked(),
+        expectedReporter).parse();
+
+    List<String> errors = new ArrayList<>();
+    ErrorReporter reporter = new ErrorReporter(errors::add, null);
+    List<Stmt> statements = new ParallelParser(
+        new Scanner(source, new SymbolTable(), reporter).scanPacked(),
+        reporter, POOL, minTokens).parse();
+
+    String context = "minTokens " + minTokens + " in:\n" + source;
+    assertEquals(expectedErrors, errors, context);
+    assertEquals(Trees.dump(expected), Trees.dump(statements), context);
+  }
+}
@@ -0,0 +1,74 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+// ParallelScanner must give the tokens, lines and errors of the sequential Scanner. Chunks
+// are made tiny so that tokens, strings and comments fall across chunk boundaries.
+class ParallelScannerTest {
+  // More threads than this sandbox may have cores, the pool still splits the work.
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+  // Strings spanning lines and chunks, unterminated strings, comments with quotes in them.
+  private static final String[] PARTS = {
+    "var", " ", "x", "12.5", "\"ab\ncd\"", "\"s\"", "\n", "\n", "// c \"q\n", "+", "==",
+    "@", "\"", "(", ")", ";", "print", "\n\n", "1.", "/", "\"\n\n\n\"", "!="
+  };
+
+  @AfterAll
+  static void shutdown() {
+    POOL.shutdown();
+  }
+
+  @Test
+  void matchesScannerOnRandomSources() {
+    Random random = new Random(42);
+    for (int i = 0; i < 3000; i++) {
+      StringBuilder source = new StringBuilder();
+      int parts = random.nextInt(200);
+      for (int j = 0; j < parts; j++) source.append(PARTS[random.nextInt(PARTS.length)]);
+      assertSameTokens(source.toString(), 1 + random.nextInt(20));
+    }
+  }
+
+  @Test
+  void stringAcrossManyChunks() {
+    assertSameTokens("print 1;\nprint \"a\nb\nc\nd\ne\nf\ng\";\nprint 2;\n", 2);
+  }
+
+  @Test
+  void unterminatedStringRunsToTheEnd() {
+    assertSameTokens("print 1;\nprint \"never\nclosed;\nprint 2;\nprint 3;\n", 2);
+  }
+
+  @Test
+  void unterminatedStringAtTheEndOfAChunk() {
+    assertSameTokens("print \"a\";\n\"\nprint 1;\n\"\nprint 2;\n\"", 3);
+  }
+
+  private static void assertSameTokens(String source, int minChunk) {
+    List<String> expectedErrors = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    PackedTokens expected = new Scanner(source, new SymbolTable(),
+        new ErrorReporter(expectedErrors::add, null)).scanPacked();
+    PackedTokens tokens = new ParallelScanner(source, new SymbolTable(),
+        new ErrorReporter(errors::add, null), POOL, minChunk).scan();
+
+    String context = "minChunk " + minChunk + " in:\n" + source;
+    assertEquals(expectedErrors, errors, context);
+    assertEquals(expected.size(), tokens.size(), context);
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.type(i), tokens.type(i), context);
+      assertEquals(expected.line(i), tokens.line(i), context);
+      assertEquals(expected.lexeme(i), tokens.lexeme(i), context);
+      assertEquals(expected.literal(i), tokens.literal(i), context);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// Trees of the precedence climbing loop, and the syntax errors it reports, as the
+// recursive descent parser it replaced gave them.
+class ParserTest {
+  private final List<String> errors = new ArrayList<>();
+
+  @Test
+  void sameLevelIsLeftAssociative() {
+    assertTree("print (- (- 1.0 2.0) 3.0)\n", "print 1 - 2 - 3;");
+    assertTree("print (/ (* (/ 8.0 4.0) 2.0) 1.0)\n", "print 8 / 4 * 2 / 1;");
+    assertTree("print (== (!= a b) c)\n", "print a != b == c;");
+    assertTree("print (< (<= a b) c)\n", "print a <= b < c;");
+  }
+
+  @Test
+  void higherLevelsBindTighter() {
+    assertTree("print (== (+ 1.0 (* 2.0 3.0)) (> 7.0 1.0))\n", "print 1 + 2 * 3 == 7 > 1;");
+    assertTree("print (!= (> (- a (/ b c)) d) (< e (+ f g)))\n",
+               "print a - b / c > d != e < f + g;");
+    assertTree("print (+ (* a b) (* c d))\n", "print a * b + c * d;");
+  }
+
+  @Test
+  void unaryAndGrouping() {
+    assertTree("print (* (- 1.0) (- (- 2.0)))\n", "print -1 * --2;");
+    assertTree("print (== (! true) (! (! false)))\n", "print !true == !!false;");
+    assertTree("print (* (group (+ 1.0 2.0)) 3.0)\n", "print (1 + 2) * 3;");
+    assertTree("print (- 1.0 (group (- 2.0 3.0)))\n", "print 1 - (2 - 3);");
+    assertTree("var x@1 (+ (- y) 1.0)\nexpr (== x (group (> 2.0 1.0)))\n",
+               "var x = -y + 1;\nx == (2 > 1);");
+  }
+
+  @Test
+  void missingOperands() {
+    assertErrors(List.of("[line 1] Error at ';': Expect expression."), "print 1 +;");
+    assertErrors(List.of("[line 1] Error at '*': Expect expression."), "print * 2;");
+    assertErrors(List.of("[line 2] Error at ';': Expect expression."), "print 1 ==\n;");
+    assertErrors(List.of("[line 1] Error at end: Expect expression."), "print 1 - -");
+    assertErrors(List.of("[line 1] Error at '<': Expect expression."), "print 1 * < 2;");
+  }
+
+  @Test
+  void otherErrorsKeepTheirPositions() {
+    assertErrors(List.of("[line 1] Error at ';': Expect ')' after expression."),
+                 "print (1 + 2;");
+    assertErrors(List.of("[line 2] Error at 'print': Expect ':' after value."),
+                 "print 1 + 2\nprint 3;");
+    assertErrors(List.of("[line 2] Error at 'print': Exprect ';' adter expression."),
+                 "1 + 2\nprint 3;");
+    assertErrors(List.of("[line 1] Error at end: Expect ';' after variable declaration."),
+                 "var x = 1 * 2");
+    // Each statement reports its own error and parsing goes on with the next one.
+    assertErrors(List.of("[line 1] Error at ';': Expect expression.",
+                         "[line 3] Error at ')': Expect expression."),
+                 "print 1 -;\nprint 2;\nprint ();");
+  }
+
+  private void assertTree(String expected, String source) {
+    List<Stmt> statements = parse(source);
+    assertEquals(List.of(), errors, source);
+    assertEquals(expected, Trees.dump(statements), source);
+  }
+
+  private void assertErrors(List<String> expected, String source) {
+    errors.clear();
+    parse(source);
+    assertEquals(expected, errors, source);
+  }
+
+  private List<Stmt> parse(String source) {
+    ErrorReporter reporter = new ErrorReporter(errors::add, null);
+    return new Parser(new Scanner(source, new SymbolTable(), reporter).scanPacked(), reporter)
+        .parse();
+  }
+}
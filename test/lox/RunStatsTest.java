@@ -0,0 +1,39 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class RunStatsTest {
+  // Redefining a variable does not count it twice, and the count carries over evals.
+  @Test
+  void environmentSizeCountsDefinedVariables() {
+    for (Consumer<LoxContext> engine : List.<Consumer<LoxContext>>of(
+        context -> { },
+        context -> context.useVm(true),
+        context -> {
+          context.useVm(true);
+          context.nanBoxing(true);
+        })) {
+      LoxContext context = new LoxContext(new ListSink(), error -> fail(error));
+      engine.accept(context);
+      context.collectStats(true);
+      context.eval("var a = 1;\nvar b = 2;\nvar a = \"again\";\n");
+      assertEquals(2, context.stats().environmentSize());
+      context.eval("var c = nil;\n");
+      assertEquals(3, context.stats().environmentSize());
+    }
+  }
+
+  @Test
+  void nothingIsRecordedWhenDisabled() {
+    LoxContext context = new LoxContext(new ListSink(), error -> fail(error));
+    context.eval("var a = 1;\nprint a;\n");
+    assertEquals(0, context.stats().environmentSize());
+    assertEquals(0, context.stats().nodes());
+    assertEquals(0, context.stats().nanos(RunStats.Phase.INTERPRET));
+  }
+}
@@ -0,0 +1,57 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ScriptCacheTest {
+  @Test
+  void countsHitsAndMisses() {
+    ScriptCache cache = new ScriptCache(4);
+    CompiledScript first = cache.get("print 1;");
+    assertSame(first, cache.get("print 1;"));
+    // The same text from another CharSequence is the same key.
+    assertSame(first, cache.get(new StringBuilder("print 1;")));
+    cache.get("print 2;");
+
+    assertEquals(2, cache.hits());
+    assertEquals(2, cache.misses());
+    assertEquals(0, cache.evictions());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  void evictsTheLeastRecentlyUsed() {
+    ScriptCache cache = new ScriptCache(2);
+    CompiledScript a = cache.get("print \"a\";");
+    CompiledScript b = cache.get("print \"b\";");
+    // Using a makes b the least recently used.
+    assertSame(a, cache.get("print \"a\";"));
+    cache.get("print \"c\";");
+
+    assertEquals(1, cache.evictions());
+    assertEquals(2, cache.size());
+    assertSame(a, cache.get("print \"a\";"));
+    // b was evicted, so it compiles again, which evicts c.
+    assertNotSame(b, cache.get("print \"b\";"));
+
+    assertEquals(2, cache.hits());
+    assertEquals(4, cache.misses());
+    assertEquals(2, cache.evictions());
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  void scriptsWithErrorsAreCachedToo() {
+    ScriptCache cache = new ScriptCache(1);
+    CompiledScript broken = cache.get("print ;");
+    assertTrue(broken.hasErrors());
+    assertSame(broken, cache.get("print ;"));
+    assertEquals(1, cache.hits());
+  }
+
+  @Test
+  void capacityMustBePositive() {
+    assertThrows(IllegalArgumentException.class, () -> new ScriptCache(0));
+  }
+}
@@ -0,0 +1,104 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// One tree run again and again while its variables change type, so the Binary and Unary
+// nodes first specialize on numbers, then deoptimize to GENERIC. Results are checked
+// against the values Lox defines, not against another engine.
+class SpecializationTest {
+  private static final String[] EXPRESSIONS = {"a + b", "a - b", "a < b", "-a", "!a", "a == b"};
+
+  private final ListSink output = new ListSink();
+  private final List<String> errors = new ArrayList<>();
+  private final ErrorReporter reporter = new ErrorReporter(errors::add, output);
+  private final SymbolTable symbols = new SymbolTable();
+  private final Resolver resolver = new Resolver();
+  private final Interpreter interpreter = new Interpreter(output, reporter);
+
+  @Test
+  void nodesDeoptimizeWhenTypesChange() {
+    run("var a = 0;\nvar b = 0;\n");
+    List<Stmt.Print> prints = new ArrayList<>();
+    for (String expression : EXPRESSIONS) {
+      prints.add((Stmt.Print) parse("print " + expression + ";").get(0));
+    }
+
+    define("1", "2");
+    assertEquals(List.of("3", "-1", "true", "-1", "false", "false"), results(prints));
+    Expression.Binary add = (Expression.Binary) prints.get(0).expression;
+    Expression.Binary less = (Expression.Binary) prints.get(2).expression;
+    assertNotSame(BinaryNode.UNINITIALIZED, add.node);
+    assertNotSame(BinaryNode.GENERIC, add.node);
+    assertNotSame(BinaryNode.GENERIC, less.node);
+
+    define("\"x\"", "\"y\"");
+    assertEquals(List.of("xy",
+                         "Operands must be numbers\n[line 1]",
+                         "Operands must be numbers\n[line 1]",
+                         "Operand must be a number.\n[line 1]",
+                         "false",
+                         "false"), results(prints));
+    assertSame(BinaryNode.GENERIC, add.node);
+    assertSame(BinaryNode.GENERIC, less.node);
+
+    define("nil", "nil");
+    assertEquals(List.of("Operands must be two numbers or two strings.\n[line 1]",
+                         "Operands must be numbers\n[line 1]",
+                         "Operands must be numbers\n[line 1]",
+                         "Operand must be a number.\n[line 1]",
+                         "true",
+                         "true"), results(prints));
+
+    // Back to numbers, through the generic nodes.
+    define("1", "2");
+    assertEquals(List.of("3", "-1", "true", "-1", "false", "false"), results(prints));
+  }
+
+  @Test
+  void concatenationDeoptimizesOnNumbers() {
+    run("var a = 0;\nvar b = 0;\n");
+    Stmt.Print print = (Stmt.Print) parse("print a + b;").get(0);
+
+    define("\"x\"", "\"y\"");
+    assertEquals(List.of("xy"), results(List.of(print)));
+    define("1", "2");
+    assertEquals(List.of("3"), results(List.of(print)));
+    define("\"x\"", "2");
+    assertEquals(List.of("Operands must be two numbers or two strings.\n[line 1]"),
+                 results(List.of(print)));
+  }
+
+  private void define(String a, String b) {
+    run("var a = " + a + ";\nvar b = " + b + ";\n");
+  }
+
+  // What each print printed, or the runtime error it raised.
+  private List<String> results(List<Stmt.Print> prints) {
+    List<String> results = new ArrayList<>();
+    for (Stmt.Print print : prints) {
+      output.lines.clear();
+      errors.clear();
+      interpreter.interpret(List.of(print));
+      results.addAll(output.lines);
+      results.addAll(errors);
+    }
+    return results;
+  }
+
+  private void run(String source) {
+    assertTrue(interpreter.interpret(parse(source)), source);
+  }
+
+  private List<Stmt> parse(String source) {
+    List<Stmt> statements = new Parser(
+        new Scanner(source, symbols, reporter).scanPacked(), reporter).parse();
+    assertFalse(reporter.hadError, source);
+    resolver.resolve(statements);
+    return statements;
+  }
+}
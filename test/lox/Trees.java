@@ -0,0 +1,30 @@
+package lox;
+
+import java.util.List;
+
+// Statements as text, to compare trees in tests. Expressions go through AstPrinter, names
+// keep their line. The Parser leaves a null where a statement had a syntax error.
+final class Trees {
+  private Trees() {
+  }
+
+  static String dump(List<Stmt> statements) {
+    AstPrinter printer = new AstPrinter();
+    StringBuilder builder = new StringBuilder();
+    for (Stmt statement : statements) {
+      if (statement == null) {
+        builder.append("null");
+      } else if (statement instanceof Stmt.Print) {
+        builder.append("print ").append(printer.print(((Stmt.Print) statement).expression));
+      } else if (statement instanceof Stmt.Expr) {
+        builder.append("expr ").append(printer.print(((Stmt.Expr) statement).expression));
+      } else {
+        Stmt.Var var = (Stmt.Var) statement;
+        builder.append("var ").append(var.name.lexeme).append('@').append(var.name.line);
+        if (var.initializer != null) builder.append(' ').append(printer.print(var.initializer));
+      }
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+}